@@ -0,0 +1,89 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.api;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns all biome-ids (the biome-strings of {@link Block#getBiome()}) into a dense int-id,
+ * so that biomes can be stored in primitive arrays and compared and looked up without string-operations.<br>
+ * <br>
+ * The int-ids are only valid during one runtime, they should never be persisted.<br>
+ * <br>
+ * <i>This class is thread-save</i><br>
+ */
+public class BiomeRegistry {
+	
+	private static final Map<String, Integer> biomeIds = new ConcurrentHashMap<>();
+	
+	//written under the class-lock, elements are written before the array or the id is published
+	private static volatile String[] biomes = new String[64];
+	private static int biomeCount = 0;
+	
+	private BiomeRegistry() {}
+	
+	/**
+	 * Returns the int-id of the given biome, registering the biome if it is not yet known.
+	 */
+	public static int getBiomeId(String biome) {
+		Integer id = biomeIds.get(biome);
+		if (id != null) return id;
+		
+		return register(biome);
+	}
+	
+	private static synchronized int register(String biome) {
+		Integer id = biomeIds.get(biome);
+		if (id != null) return id;
+		
+		int newId = biomeCount;
+		if (newId == biomes.length) {
+			biomes = Arrays.copyOf(biomes, newId * 2);
+		}
+		
+		biomes[newId] = biome;
+		biomeCount++;
+		
+		biomeIds.put(biome, newId);
+		return newId;
+	}
+	
+	/**
+	 * Returns the biome with this int-id
+	 */
+	public static String getBiome(int biomeId) {
+		return biomes[biomeId];
+	}
+	
+	/**
+	 * Returns the number of registered biomes, all biome-ids are smaller than this number
+	 */
+	public static synchronized int size() {
+		return biomeCount;
+	}
+	
+}
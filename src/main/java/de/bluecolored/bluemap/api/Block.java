@@ -59,7 +59,8 @@ public boolean isOccludingNeighborFaces(){
 
 	/**
 	 * This is internally used for light rendering
-	 * It is basically the sun light that is projected onto adjacent faces
+	 * It is basically the sun light that is projected onto adjacent faces<br>
+	 * The result is cached, so the context has to be positioned at this block!
 	 */
 	public float getPassedSunLight(BlockContext context) {
 		if (sunLight < 0) calculateLight(context);
@@ -68,13 +69,42 @@ public float getPassedSunLight(BlockContext context) {
 	
 	/**
 	 * This is internally used for light rendering
-	 * It is basically the block light that is projected onto adjacent faces
+	 * It is basically the block light that is projected onto adjacent faces<br>
+	 * The result is cached, so the context has to be positioned at this block!
 	 */
 	public float getPassedBlockLight(BlockContext context) {
 		if (blockLight < 0) calculateLight(context);
 		return blockLight;
 	}
 	
+	/**
+	 * Same as {@link #getPassedSunLight(BlockContext)}, but the result is not cached, so the context can be positioned anywhere
+	 */
+	public float calculatePassedSunLight(BlockContext context) {
+		float sunLight = (float) getSunLightLevel();
+		if (sunLight > 0 || getBlockLightLevel() > 0) return sunLight;
+		
+		for (Direction direction : Direction.values()) {
+			sunLight = (float) Math.max(context.getRelativeBlock(direction).getSunLightLevel(), sunLight);
+		}
+		
+		return sunLight;
+	}
+	
+	/**
+	 * Same as {@link #getPassedBlockLight(BlockContext)}, but the result is not cached, so the context can be positioned anywhere
+	 */
+	public float calculatePassedBlockLight(BlockContext context) {
+		float blockLight = (float) getBlockLightLevel();
+		if (blockLight > 0 || getSunLightLevel() > 0) return blockLight;
+		
+		for (Direction direction : Direction.values()) {
+			blockLight = (float) Math.max(context.getRelativeBlock(direction).getBlockLightLevel(), blockLight);
+		}
+		
+		return blockLight;
+	}
+	
 	private void calculateLight(BlockContext context) {
 		sunLight = (float) getSunLightLevel();
 		blockLight = (float) getBlockLightLevel();
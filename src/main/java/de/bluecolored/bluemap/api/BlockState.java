@@ -32,6 +32,7 @@
 /**
  * Represents a block in a {@link World}<br>
  * It is important that {@link #hashCode} and {@link #equals} are implemented correctly, for the caching to work properly.<br>
+ * Every block-state gets a palette-id from the {@link BlockStateRegistry}, it is cached so the implementation should reuse block-state instances if possible.<br>
  * <br>
  * <i>The implementation of this class has to be thread-save!</i><br>
  */
@@ -40,9 +41,13 @@ public abstract class BlockState {
 	private boolean hashed;
 	private int hash;
 	
+	private volatile int paletteId;
+	
 	public BlockState() {
 		this.hashed = false;
 		this.hash = 0;
+		
+		this.paletteId = -1;
 	}
 	
 	/**
@@ -66,6 +71,34 @@ public BlockState() {
 	 */
 	public abstract Map<String, String> getProperties();
 	
+	/**
+	 * Returns the palette-id of this block-state, see {@link BlockStateRegistry#getPaletteId(BlockState)}
+	 */
+	public final int getPaletteId() {
+		int id = paletteId;
+		if (id < 0) {
+			id = BlockStateRegistry.getPaletteId(this);
+			paletteId = id;
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Returns a dense int-id for the resource-id of this block-state, see {@link BlockStateRegistry#getResourcePaletteId(int)}
+	 */
+	public final int getResourcePaletteId() {
+		return BlockStateRegistry.getResourcePaletteId(getPaletteId());
+	}
+	
+	public final boolean isAir() {
+		return BlockStateRegistry.hasFlag(getPaletteId(), BlockStateRegistry.FLAG_AIR);
+	}
+	
+	public final boolean isLiquid() {
+		return BlockStateRegistry.hasFlag(getPaletteId(), BlockStateRegistry.FLAG_LIQUID);
+	}
+	
 	public final boolean checkVariantCondition(String condition){
 		if (condition.isEmpty() || condition.equals("normal")) return true;
 
@@ -86,8 +119,10 @@ public final boolean checkVariantCondition(String condition){
 	
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) return true;
 		if (!(obj instanceof BlockState)) return false;
 		BlockState b = (BlockState) obj;
+		if (paletteId >= 0 && b.paletteId >= 0) return paletteId == b.paletteId;
 		if (!Objects.equals(getResourceId(), b.getResourceId())) return false;
 		if (!Objects.equals(getProperties(), b.getProperties())) return false;
 		return true;
@@ -0,0 +1,134 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.api;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns all {@link BlockState}s into flyweights with a dense int-id (the palette-id), 
+ * and precomputes some classification-flags per id, so that hot render-paths can use int-compares and array-lookups 
+ * instead of comparing strings and property-maps.<br>
+ * <br>
+ * The palette-ids are only valid during one runtime, they should never be persisted.<br>
+ * <br>
+ * <i>This class is thread-save</i><br>
+ */
+public class BlockStateRegistry {
+
+	public static final int FLAG_AIR = 1;
+	public static final int FLAG_LIQUID = 2;
+	
+	private static final Map<BlockState, Integer> stateIds = new ConcurrentHashMap<>();
+	private static final Map<String, Integer> resourceIds = new ConcurrentHashMap<>();
+	
+	//written under the class-lock, elements are written before the array or the id is published
+	private static volatile BlockState[] states = new BlockState[256];
+	private static volatile int[] stateResourceIds = new int[256];
+	private static volatile byte[] stateFlags = new byte[256];
+	private static int stateCount = 0;
+	
+	private BlockStateRegistry() {}
+	
+	/**
+	 * Returns the palette-id of the given block-state, registering the state if it is not yet known.<br>
+	 * Equal block-states always have the same palette-id.
+	 */
+	public static int getPaletteId(BlockState state) {
+		Integer id = stateIds.get(state);
+		if (id != null) return id;
+		
+		return register(state);
+	}
+	
+	private static synchronized int register(BlockState state) {
+		Integer id = stateIds.get(state);
+		if (id != null) return id;
+		
+		int newId = stateCount;
+		if (newId == states.length) {
+			int newLength = newId * 2;
+			states = Arrays.copyOf(states, newLength);
+			stateResourceIds = Arrays.copyOf(stateResourceIds, newLength);
+			stateFlags = Arrays.copyOf(stateFlags, newLength);
+		}
+		
+		states[newId] = state;
+		stateResourceIds[newId] = resourceIds.computeIfAbsent(state.getResourceId(), rid -> resourceIds.size());
+		stateFlags[newId] = (byte) computeFlags(state);
+		stateCount++;
+		
+		stateIds.put(state, newId);
+		return newId;
+	}
+	
+	private static int computeFlags(BlockState state) {
+		String resourceId = state.getResourceId();
+		int flags = 0;
+		
+		if (resourceId.equals("air")) flags |= FLAG_AIR;
+		if (resourceId.equals("water") || resourceId.equals("lava")) flags |= FLAG_LIQUID;
+		
+		return flags;
+	}
+	
+	/**
+	 * Returns the interned block-state (the first registered state that is equal to the block-state with this palette-id)
+	 */
+	public static BlockState getState(int paletteId) {
+		return states[paletteId];
+	}
+	
+	/**
+	 * Returns a dense int-id for the resource-id of the block-state with this palette-id.<br>
+	 * Two block-states have the same resource-palette-id exactly if they have the same resource-id.
+	 */
+	public static int getResourcePaletteId(int paletteId) {
+		return stateResourceIds[paletteId];
+	}
+	
+	/**
+	 * Returns the classification-flags of the block-state with this palette-id, see the FLAG_* constants
+	 */
+	public static int getFlags(int paletteId) {
+		return stateFlags[paletteId];
+	}
+	
+	/**
+	 * Returns true if the block-state with this palette-id has the given flag
+	 */
+	public static boolean hasFlag(int paletteId, int flag) {
+		return (stateFlags[paletteId] & flag) != 0;
+	}
+	
+	/**
+	 * Returns the number of registered block-states, all palette-ids are smaller than this number
+	 */
+	public static synchronized int size() {
+		return stateCount;
+	}
+	
+}
@@ -57,6 +57,16 @@ default Block getBlock(int x, int y, int z) throws ChunkNotGeneratedException {
 		return getBlock(new Vector3i(x, y, z));
 	}
 	
+	/**
+	 * Returns the y-coordinate of the highest block in the given column that is not air.<br>
+	 * All blocks above the returned height have to be air, but the returned height may be higher than the actual highest block.<br>
+	 * <br>
+	 * <i>(The implementation should override this if it can use a height-map of the world, the default implementation just returns the top of the boundaries)</i><br>
+	 */
+	default int getHighestBlockY(int x, int z) throws ChunkNotGeneratedException {
+		return getBoundaries().getMax().getFloorY();
+	}
+	
 	/**
 	 * Returns true if this WorldChunk contains the given position.
 	 */
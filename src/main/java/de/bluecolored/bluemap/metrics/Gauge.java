@@ -0,0 +1,56 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * A metric that reads its current value from a supplier whenever it is exported
+ */
+public class Gauge implements Metric {
+	
+	private final DoubleSupplier value;
+	
+	public Gauge(DoubleSupplier value) {
+		this.value = value;
+	}
+	
+	public double get() {
+		return value.getAsDouble();
+	}
+	
+	@Override
+	public String getType() {
+		return "gauge";
+	}
+	
+	@Override
+	public void write(String name, String labels, StringBuilder out) {
+		out.append(name);
+		if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+		out.append(' ').append(get()).append('\n');
+	}
+	
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with fixed, exponentially growing buckets from 0.05ms to about 100s.<br>
+ * Observing a duration only increments a few {@link LongAdder}s, so it can be used in hot code from many threads.
+ */
+public class Histogram implements Metric {
+	
+	private static final long[] BUCKET_BOUNDS; //nanoseconds, inclusive
+	static {
+		BUCKET_BOUNDS = new long[22];
+		long bound = 50_000;
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			BUCKET_BOUNDS[i] = bound;
+			bound *= 2;
+		}
+	}
+	
+	private final LongAdder[] buckets;
+	private final LongAdder sum;
+	
+	public Histogram() {
+		this.buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+		
+		this.sum = new LongAdder();
+	}
+	
+	/**
+	 * Records a duration in nanoseconds
+	 */
+	public void observe(long nanos) {
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[bucket]) bucket++;
+		
+		buckets[bucket].increment();
+		sum.add(nanos);
+	}
+	
+	/**
+	 * Records the duration since the given start-time ({@link System#nanoTime()})
+	 * 
+	 * @return the current {@link System#nanoTime()}, so it can be used as the start-time of the next observation
+	 */
+	public long observeSince(long startNanos) {
+		long now = System.nanoTime();
+		observe(now - startNanos);
+		return now;
+	}
+	
+	@Override
+	public String getType() {
+		return "histogram";
+	}
+	
+	@Override
+	public void write(String name, String labels, StringBuilder out) {
+		String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+		
+		long count = 0;
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			count += buckets[i].sum();
+			out.append(name).append("_bucket{").append(labelPrefix).append("le=\"").append(BUCKET_BOUNDS[i] / 1e9).append("\"} ").append(count).append('\n');
+		}
+		count += buckets[BUCKET_BOUNDS.length].sum();
+		out.append(name).append("_bucket{").append(labelPrefix).append("le=\"+Inf\"} ").append(count).append('\n');
+		
+		String labelBlock = labels.isEmpty() ? "" : "{" + labels + "}";
+		out.append(name).append("_sum").append(labelBlock).append(' ').append(sum.sum() / 1e9).append('\n');
+		out.append(name).append("_count").append(labelBlock).append(' ').append(count).append('\n');
+	}
+	
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events and measures their rate per second as an exponentially weighted moving average over about one minute.<br>
+ * The average is updated lazily in intervals of 5 seconds when the meter is used, so marking an event stays cheap.<br>
+ * <br>
+ * As a {@link Metric} the meter is exported as a counter of the events, the rate can be exported with an additional {@link Gauge}.
+ */
+public class Meter implements Metric {
+	
+	private static final long TICK_INTERVAL = 5_000_000_000L; //ns
+	private static final double ALPHA = 1 - Math.exp(-5d / 60d);
+	
+	private final LongAdder count;
+	private final LongAdder uncounted;
+	private final AtomicLong lastTick;
+	
+	private volatile double rate;
+	private volatile boolean initialized;
+	
+	public Meter() {
+		this.count = new LongAdder();
+		this.uncounted = new LongAdder();
+		this.lastTick = new AtomicLong(System.nanoTime());
+		
+		this.rate = 0;
+		this.initialized = false;
+	}
+	
+	public void mark() {
+		tickIfNecessary();
+		count.increment();
+		uncounted.increment();
+	}
+	
+	/**
+	 * Returns the number of events that have been marked
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * Returns the rate of events per second
+	 */
+	public double getRate() {
+		tickIfNecessary();
+		return rate;
+	}
+	
+	@Override
+	public String getType() {
+		return "counter";
+	}
+	
+	@Override
+	public void write(String name, String labels, StringBuilder out) {
+		out.append(name);
+		if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+		out.append(' ').append(getCount()).append('\n');
+	}
+	
+	private void tickIfNecessary() {
+		long last = lastTick.get();
+		long now = System.nanoTime();
+		long age = now - last;
+		if (age < TICK_INTERVAL) return;
+		
+		long newTick = now - age % TICK_INTERVAL;
+		if (!lastTick.compareAndSet(last, newTick)) return; //another thread is ticking
+		
+		long ticks = age / TICK_INTERVAL;
+		for (long i = 0; i < ticks; i++) {
+			double instantRate = uncounted.sumThenReset() * 1e9 / TICK_INTERVAL;
+			if (initialized) {
+				rate += ALPHA * (instantRate - rate);
+			} else {
+				rate = instantRate;
+				initialized = true;
+			}
+		}
+	}
+	
+}
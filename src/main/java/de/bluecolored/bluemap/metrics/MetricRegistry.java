@@ -0,0 +1,150 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * Holds named metrics and exports them in the prometheus text-format.<br>
+ * Metrics with the same name but different labels are exported together as one metric-family.
+ */
+public class MetricRegistry {
+	
+	private static final MetricRegistry GLOBAL = new MetricRegistry();
+	
+	private Map<String, Family> families;
+	
+	public MetricRegistry() {
+		this.families = new ConcurrentSkipListMap<>();
+	}
+	
+	/**
+	 * Returns the registry that BlueMap's render-components record their metrics in
+	 */
+	public static MetricRegistry global() {
+		return GLOBAL;
+	}
+	
+	/**
+	 * Returns the histogram with the given name and labels, creating it if it does not exist yet
+	 * 
+	 * @param labels alternating label-names and -values
+	 */
+	public Histogram histogram(String name, String help, String... labels) {
+		return getOrCreate(name, help, "histogram", labels, Histogram.class, l -> new Histogram());
+	}
+	
+	/**
+	 * Returns the counter with the given name and labels, creating it if it does not exist yet
+	 * 
+	 * @param labels alternating label-names and -values
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		return getOrCreate(name, help, "counter", labels, Counter.class, l -> new Counter());
+	}
+	
+	/**
+	 * Registers a metric with the given name and labels, replacing any metric that is registered with the same name and labels
+	 * 
+	 * @param labels alternating label-names and -values
+	 */
+	public void register(String name, String help, Metric metric, String... labels) {
+		getFamily(name, help, metric.getType()).metrics.put(formatLabels(labels), metric);
+	}
+	
+	/**
+	 * Removes the metric with the given name and labels
+	 * 
+	 * @param labels alternating label-names and -values
+	 */
+	public void unregister(String name, String... labels) {
+		Family family = families.get(name);
+		if (family != null) family.metrics.remove(formatLabels(labels));
+	}
+	
+	/**
+	 * Returns all metrics in the prometheus text-format (version 0.0.4)
+	 */
+	public String toPrometheusText() {
+		StringBuilder out = new StringBuilder();
+		
+		for (Map.Entry<String, Family> entry : families.entrySet()) {
+			String name = entry.getKey();
+			Family family = entry.getValue();
+			if (family.metrics.isEmpty()) continue;
+			
+			out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+			out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+			for (Map.Entry<String, Metric> metric : family.metrics.entrySet()) {
+				metric.getValue().write(name, metric.getKey(), out);
+			}
+		}
+		
+		return out.toString();
+	}
+	
+	private <T extends Metric> T getOrCreate(String name, String help, String metricType, String[] labels, Class<T> type, Function<String, T> factory) {
+		Family family = getFamily(name, help, metricType);
+		Metric metric = family.metrics.computeIfAbsent(formatLabels(labels), factory);
+		if (!type.isInstance(metric)) throw new IllegalArgumentException("The metric " + name + " is not a " + type.getSimpleName());
+		return type.cast(metric);
+	}
+	
+	private Family getFamily(String name, String help, String type) {
+		Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+		if (!family.type.equals(type)) throw new IllegalArgumentException("The metric " + name + " is already registered as " + family.type);
+		return family;
+	}
+	
+	private static String formatLabels(String[] labels) {
+		if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels have to be pairs of names and values!");
+		
+		StringBuilder formatted = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) formatted.append(',');
+			formatted.append(labels[i]).append("=\"");
+			formatted.append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+			formatted.append('"');
+		}
+		return formatted.toString();
+	}
+	
+	private static class Family {
+		
+		private final String help;
+		private final String type;
+		private final Map<String, Metric> metrics;
+		
+		public Family(String help, String type) {
+			this.help = help;
+			this.type = type;
+			this.metrics = new ConcurrentSkipListMap<>();
+		}
+		
+	}
+	
+}
@@ -63,6 +63,55 @@ public Face(Vector3f p1, Vector3f p2, Vector3f p3, Vector2f uv1, Vector2f uv2, V
 		this.c3 = color;
 	}
 	
+	/**
+	 * Creates a face with the given (normalized) normals
+	 */
+	public Face(Vector3f p1, Vector3f p2, Vector3f p3, Vector3f n1, Vector3f n2, Vector3f n3, Vector2f uv1, Vector2f uv2, Vector2f uv3, int materialIndex) {
+		this.p1 = p1;
+		this.p2 = p2;
+		this.p3 = p3;
+		
+		this.n1 = n1;
+		this.n2 = n2;
+		this.n3 = n3;
+		this.normalizedNormals = true;
+		
+		this.uv1 = uv1;
+		this.uv2 = uv2;
+		this.uv3 = uv3;
+		
+		this.materialIndex = materialIndex;
+		
+		Vector3f color = Vector3f.ONE;
+		this.c1 = color;
+		this.c2 = color;
+		this.c3 = color;
+	}
+	
+	/**
+	 * Creates a copy of the given face
+	 */
+	public Face(Face face) {
+		this.p1 = face.p1;
+		this.p2 = face.p2;
+		this.p3 = face.p3;
+		
+		this.n1 = face.n1;
+		this.n2 = face.n2;
+		this.n3 = face.n3;
+		this.normalizedNormals = face.normalizedNormals;
+		
+		this.c1 = face.c1;
+		this.c2 = face.c2;
+		this.c3 = face.c3;
+		
+		this.uv1 = face.uv1;
+		this.uv2 = face.uv2;
+		this.uv3 = face.uv3;
+		
+		this.materialIndex = face.materialIndex;
+	}
+	
 	public void rotate(Quaternionf rotation){
 		p1 = rotation.rotate(p1);
 		p2 = rotation.rotate(p2);
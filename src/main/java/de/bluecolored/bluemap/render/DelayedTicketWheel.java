@@ -0,0 +1,248 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import de.bluecolored.bluemap.render.RenderManager.RenderTicket;
+
+/**
+ * Holds delayed render-tickets and hands them to a consumer when their delay expired.<br>
+ * A ticket that is scheduled again while it is still delayed is merged with the delayed ticket.<br>
+ * <br>
+ * <i>
+ * Implementation note:<br>
+ * This is a hashed timing-wheel: every delayed ticket is put into the slot of the tick it expires in, 
+ * and on each tick only the tickets in the current slot are visited. Tickets with a delay longer than one revolution of the wheel
+ * count down the revolutions they still have to wait. So promoting a ticket is O(1) amortized, no matter how many tickets are delayed.<br>
+ * New tickets are passed to the wheel-thread through a lock-free queue and the wheel itself is only accessed by that thread.<br>
+ * Tickets that are removed (because they have been scheduled without delay) stay in their slot until it is visited and are skipped then.
+ * </i>
+ */
+class DelayedTicketWheel {
+	
+	private static final long TICK_DURATION = 50; //ms
+	private static final int WHEEL_SIZE = 512; //must be a power of two
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	
+	private Map<RenderTicket, DelayedTicket> delayedTickets;
+	private Queue<DelayedTicket> newTickets;
+	private ArrayDeque<DelayedTicket>[] wheel;
+	
+	private Consumer<RenderTicket> expiredTicketConsumer;
+	
+	private Thread thread;
+	private volatile boolean shutdown;
+	
+	private long startTime;
+	private long tick;
+	
+	@SuppressWarnings("unchecked")
+	public DelayedTicketWheel(String threadName, Consumer<RenderTicket> expiredTicketConsumer) {
+		this.delayedTickets = new ConcurrentHashMap<>();
+		this.newTickets = new ConcurrentLinkedQueue<>();
+		
+		this.wheel = (ArrayDeque<DelayedTicket>[]) new ArrayDeque<?>[WHEEL_SIZE];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new ArrayDeque<>();
+		}
+		
+		this.expiredTicketConsumer = expiredTicketConsumer;
+		
+		this.thread = new Thread(this::run);
+		this.thread.setDaemon(true);
+		this.thread.setName(threadName);
+		this.shutdown = false;
+	}
+	
+	/**
+	 * Delays the ticket by the given amount of milliseconds (rounded up to the next tick of the wheel).
+	 * 
+	 * @return the equal ticket that is already delayed, or null if the given ticket has been added
+	 */
+	public RenderTicket schedule(RenderTicket ticket, long delay) {
+		DelayedTicket delayedTicket = new DelayedTicket(ticket, System.currentTimeMillis() + delay);
+		
+		DelayedTicket existing = delayedTickets.putIfAbsent(ticket, delayedTicket);
+		if (existing != null) return existing.renderTicket;
+		
+		newTickets.add(delayedTicket);
+		LockSupport.unpark(thread); //wake the wheel-thread, in case it is idle
+		return null;
+	}
+	
+	/**
+	 * Removes the delayed ticket that is equal to the given ticket
+	 * 
+	 * @return the removed ticket, or null if there was no equal ticket delayed
+	 */
+	public RenderTicket remove(RenderTicket ticket) {
+		DelayedTicket delayedTicket = delayedTickets.remove(ticket);
+		if (delayedTicket == null) return null;
+		return delayedTicket.renderTicket;
+	}
+	
+	/**
+	 * Removes exactly the given ticket, if it is still delayed
+	 * 
+	 * @return true if the ticket has been removed
+	 */
+	public boolean removeExact(RenderTicket ticket) {
+		DelayedTicket delayedTicket = delayedTickets.get(ticket);
+		if (delayedTicket == null || delayedTicket.renderTicket != ticket) return false;
+		return delayedTickets.remove(ticket, delayedTicket);
+	}
+	
+	/**
+	 * Removes all delayed tickets that match the filter and adds them to the given collection
+	 */
+	public void removeIf(Predicate<RenderTicket> filter, Collection<? super RenderTicket> removed) {
+		for (DelayedTicket delayedTicket : delayedTickets.values()) {
+			if (!filter.test(delayedTicket.renderTicket)) continue;
+			if (delayedTickets.remove(delayedTicket.renderTicket, delayedTicket)) removed.add(delayedTicket.renderTicket);
+		}
+	}
+	
+	/**
+	 * Removes all delayed tickets and adds them to the given collection
+	 */
+	public void drainTo(Collection<? super RenderTicket> collection) {
+		Iterator<DelayedTicket> iterator = delayedTickets.values().iterator();
+		while (iterator.hasNext()) {
+			collection.add(iterator.next().renderTicket);
+			iterator.remove();
+		}
+	}
+	
+	/**
+	 * Returns the number of currently delayed tickets
+	 */
+	public int size() {
+		return delayedTickets.size();
+	}
+	
+	public void start() {
+		startTime = System.currentTimeMillis();
+		tick = 0;
+		thread.start();
+	}
+	
+	public void shutdown() {
+		shutdown = true;
+		thread.interrupt();
+	}
+	
+	private void run() {
+		while (!shutdown) {
+			if (delayedTickets.isEmpty()) {
+				idle();
+				continue;
+			}
+			
+			transferNewTickets();
+			
+			long currentTick = (System.currentTimeMillis() - startTime) / TICK_DURATION;
+			while (tick <= currentTick) {
+				expireTick();
+				tick++;
+			}
+			
+			long sleepTime = startTime + tick * TICK_DURATION - System.currentTimeMillis();
+			if (sleepTime > 0) {
+				try {
+					Thread.sleep(sleepTime);
+				} catch (InterruptedException e) {}
+			}
+		}
+	}
+	
+	/**
+	 * Parks the wheel-thread until a new ticket gets delayed.<br>
+	 * Since there are no delayed tickets anymore, all slots only contain removed tickets and can be cleared.
+	 */
+	private void idle() {
+		for (ArrayDeque<DelayedTicket> slot : wheel) {
+			slot.clear();
+		}
+		
+		LockSupport.park(this);
+		
+		tick = (System.currentTimeMillis() - startTime) / TICK_DURATION;
+	}
+	
+	private void transferNewTickets() {
+		DelayedTicket delayedTicket;
+		while ((delayedTicket = newTickets.poll()) != null) {
+			long expireTick = Math.floorDiv(delayedTicket.scheduleTime - startTime + TICK_DURATION - 1, TICK_DURATION);
+			if (expireTick < tick) expireTick = tick;
+			
+			delayedTicket.remainingRounds = (expireTick - tick) / WHEEL_SIZE;
+			wheel[(int) (expireTick & WHEEL_MASK)].add(delayedTicket);
+		}
+	}
+	
+	private void expireTick() {
+		ArrayDeque<DelayedTicket> slot = wheel[(int) (tick & WHEEL_MASK)];
+		
+		Iterator<DelayedTicket> iterator = slot.iterator();
+		while (iterator.hasNext()) {
+			DelayedTicket delayedTicket = iterator.next();
+			
+			if (delayedTicket.remainingRounds > 0) {
+				delayedTicket.remainingRounds--;
+				continue;
+			}
+			
+			iterator.remove();
+			
+			//only promote the ticket if it has not been removed or drained in the meantime
+			if (delayedTickets.remove(delayedTicket.renderTicket, delayedTicket)) {
+				expiredTicketConsumer.accept(delayedTicket.renderTicket);
+			}
+		}
+	}
+	
+	private static class DelayedTicket {
+		private final RenderTicket renderTicket;
+		private final long scheduleTime;
+		private long remainingRounds;
+		
+		public DelayedTicket(RenderTicket renderTicket, long scheduleTime) {
+			this.renderTicket = renderTicket;
+			this.scheduleTime = scheduleTime;
+			this.remainingRounds = 0;
+		}
+	}
+	
+}
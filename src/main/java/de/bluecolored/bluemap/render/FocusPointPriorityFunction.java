@@ -0,0 +1,122 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.flowpowered.math.vector.Vector3d;
+
+/**
+ * A {@link TilePriorityFunction} that ranks tiles by their (horizontal) distance to the nearest registered focus-point, e.g. the positions of players or viewers.<br>
+ * Tiles in a world without any focus-point are ranked last.
+ */
+public class FocusPointPriorityFunction implements TilePriorityFunction {
+
+	private static final double MIN_MOVE_DISTANCE_SQUARED = 16 * 16;
+	
+	private Map<Object, FocusPoint> focusPoints;
+	private AtomicLong revision;
+	
+	public FocusPointPriorityFunction() {
+		this.focusPoints = new ConcurrentHashMap<>();
+		this.revision = new AtomicLong(0);
+	}
+	
+	/**
+	 * Adds or moves the focus-point with the given key.<br>
+	 * <br>
+	 * <i>Small movements (less than 16 blocks) are ignored, so this can be called on every movement of a player without re-ranking the render-queue each time.</i>
+	 */
+	public void setFocusPoint(Object key, UUID world, Vector3d position) {
+		FocusPoint newPoint = new FocusPoint(world, position);
+		
+		FocusPoint oldPoint = focusPoints.get(key);
+		if (
+				oldPoint != null && 
+				oldPoint.world.equals(world) && 
+				oldPoint.position.distanceSquared(position) < MIN_MOVE_DISTANCE_SQUARED
+			) return;
+		
+		focusPoints.put(key, newPoint);
+		revision.incrementAndGet();
+	}
+	
+	/**
+	 * Removes the focus-point with the given key
+	 */
+	public void removeFocusPoint(Object key) {
+		if (focusPoints.remove(key) != null) revision.incrementAndGet();
+	}
+	
+	/**
+	 * Removes all focus-points
+	 */
+	public void clearFocusPoints() {
+		focusPoints.clear();
+		revision.incrementAndGet();
+	}
+	
+	@Override
+	public double getPriority(WorldTile tile, TileRenderer renderer) {
+		Vector2i tileSize = renderer.getHiresModelManager().getTileSize();
+		Vector2i gridOrigin = renderer.getHiresModelManager().getGridOrigin();
+		
+		double x = (tile.getTile().getX() + 0.5) * tileSize.getX() + gridOrigin.getX();
+		double z = (tile.getTile().getY() + 0.5) * tileSize.getY() + gridOrigin.getY();
+		UUID world = tile.getWorld().getUUID();
+		
+		double minDistance = Double.MAX_VALUE;
+		for (FocusPoint point : focusPoints.values()) {
+			if (!point.world.equals(world)) continue;
+			
+			double dx = point.position.getX() - x;
+			double dz = point.position.getZ() - z;
+			double distance = dx * dx + dz * dz;
+			if (distance < minDistance) minDistance = distance;
+		}
+		
+		return minDistance;
+	}
+	
+	@Override
+	public long getRevision() {
+		return revision.get();
+	}
+	
+	private static class FocusPoint {
+		private final UUID world;
+		private final Vector3d position;
+		
+		public FocusPoint(UUID world, Vector3d position) {
+			this.world = world;
+			this.position = position;
+		}
+	}
+	
+}
@@ -27,94 +27,261 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.flowpowered.math.vector.Vector2i;
 
 import de.bluecolored.bluemap.api.ChunkNotGeneratedException;
+import de.bluecolored.bluemap.api.World;
+import de.bluecolored.bluemap.metrics.Gauge;
+import de.bluecolored.bluemap.metrics.Histogram;
+import de.bluecolored.bluemap.metrics.Meter;
+import de.bluecolored.bluemap.metrics.MetricRegistry;
 
 public class RenderManager {
 	private static AtomicInteger nextRenderManagerInstanceNumber = new AtomicInteger(0);
 	
-	private Thread[] renderThreads;
-	private BlockingQueue<RenderTicket> tickets;
+	private static final String METRIC_TICKET_WAIT = "bluemap_render_ticket_wait_seconds";
+	private static final String METRIC_TILES = "bluemap_render_tiles_total";
+	private static final String METRIC_TILE_RATE = "bluemap_render_tiles_per_second";
+	private static final String METRIC_SCHEDULED_TICKETS = "bluemap_render_scheduled_tickets";
+	
+	private RenderThreadPool renderThreads;
+	private RenderTicketQueue tickets;
+	
+	private DelayedTicketWheel delayedTickets;
 	
-	private Thread delayScheduleThread;
-	private Map<RenderTicket, DelayedTicket> delayedTickets;
+	private Map<TileRenderer, RenderQueueJournal> journals;
 	
-	private boolean paused;
-	private boolean shutdown;
+	private RenderThrottle throttle;
+	private volatile boolean shutdown;
+	
+	private Histogram ticketWaitTime;
+	private Meter renderedTiles;
 	
 	private final int instanceNumber;
 	
+	/**
+	 * Creates a render-manager with a fixed number of render-threads
+	 */
 	public RenderManager(int threadCount) {
+		this(threadCount, threadCount);
+	}
+	
+	/**
+	 * Creates a render-manager with a pool of render-threads that grows and shrinks between minThreads and maxThreads, 
+	 * depending on the number of scheduled tickets, the cpu-usage and the load-signal of the {@link #getThrottle() throttle}.
+	 */
+	public RenderManager(int minThreads, int maxThreads) {
 		this.instanceNumber = nextRenderManagerInstanceNumber.getAndIncrement();
 		
-		this.renderThreads = new Thread[threadCount];
-		this.tickets = new LinkedBlockingQueue<>();
+		this.tickets = new RenderTicketQueue(TilePriorityFunction.fifo());
+		
+		this.delayedTickets = new DelayedTicketWheel("BlueMap-RenderManager-" + instanceNumber + "-delaySchedule", this::enqueue);
 		
-		this.delayScheduleThread = new Thread(this::delayScheduleThread);
-		this.delayScheduleThread.setDaemon(true);
-		this.delayScheduleThread.setName("BlueMap-RenderManager-" + instanceNumber + "-delaySchedule");
-		this.delayedTickets = new ConcurrentHashMap<>();
+		this.journals = new ConcurrentHashMap<>();
 		
-		this.paused = false;
+		this.throttle = new RenderThrottle();
 		this.shutdown = false;
-
-		for (int i = 0; i < renderThreads.length; i++) {
-			renderThreads[i] = new Thread(this::renderThread);
-			renderThreads[i].setName("BlueMap-RenderManager-" + instanceNumber + "-" + i);
-			renderThreads[i].setDaemon(true);
-		}
 		
+		this.renderThreads = new RenderThreadPool(
+				"BlueMap-RenderManager-" + instanceNumber, 
+				minThreads, 
+				maxThreads, 
+				this::renderThread, 
+				tickets::size, 
+				throttle, 
+				String.valueOf(instanceNumber)
+			);
+		
+		registerMetrics();
+	}
+	
+	private void registerMetrics() {
+		MetricRegistry metrics = MetricRegistry.global();
+		String manager = String.valueOf(instanceNumber);
+		
+		this.ticketWaitTime = metrics.histogram(METRIC_TICKET_WAIT, "Time tickets waited in the queue until they got rendered.", "manager", manager);
+		
+		this.renderedTiles = new Meter();
+		metrics.register(METRIC_TILES, "Number of rendered tiles.", renderedTiles, "manager", manager);
+		metrics.register(METRIC_TILE_RATE, "Rendered tiles per second (one minute moving average).", new Gauge(renderedTiles::getRate), "manager", manager);
+		
+		metrics.register(METRIC_SCHEDULED_TICKETS, "Number of scheduled tickets.", new Gauge(tickets::size), "manager", manager, "state", "queued");
+		metrics.register(METRIC_SCHEDULED_TICKETS, "Number of scheduled tickets.", new Gauge(delayedTickets::size), "manager", manager, "state", "delayed");
+	}
+	
+	private void unregisterMetrics() {
+		MetricRegistry metrics = MetricRegistry.global();
+		String manager = String.valueOf(instanceNumber);
+		
+		metrics.unregister(METRIC_TICKET_WAIT, "manager", manager);
+		metrics.unregister(METRIC_TILES, "manager", manager);
+		metrics.unregister(METRIC_TILE_RATE, "manager", manager);
+		metrics.unregister(METRIC_SCHEDULED_TICKETS, "manager", manager, "state", "queued");
+		metrics.unregister(METRIC_SCHEDULED_TICKETS, "manager", manager, "state", "delayed");
 	}
 	
 	/**
-	 * Schedule a new tile to be rendered with a given tile-renderer
+	 * Schedule a new tile to be rendered with a given tile-renderer and the priority {@link RenderPriority#UPDATE}
 	 * 
 	 * @return the scheduled render-ticket
 	 */
 	public RenderTicket scheduleRender(WorldTile tile, TileRenderer renderer) {
-		RenderTicket ticket = new RenderTicket(tile, renderer);
-		
-		DelayedTicket delayedTicket;
-		synchronized (delayedTickets) {
-			delayedTicket = delayedTickets.remove(ticket);
-		}
+		return scheduleRender(tile, renderer, RenderPriority.UPDATE);
+	}
+	
+	/**
+	 * Schedule a new tile to be rendered with a given tile-renderer and priority<br>
+	 * If a ticket <b>with the same tile and renderer</b> is already waiting in the queue, no new ticket is created and the pending ticket is returned instead.
+	 * 
+	 * @return the scheduled render-ticket
+	 */
+	public RenderTicket scheduleRender(WorldTile tile, TileRenderer renderer, RenderPriority priority) {
+		RenderTicket ticket = new RenderTicket(tile, renderer, priority);
 		
-		if (delayedTicket != null) ticket.listener.addAll(delayedTicket.renderTicket.listener);
+		RenderTicket delayedTicket = delayedTickets.remove(ticket);
+		RenderTicket queuedTicket = enqueue(ticket);
+		if (delayedTicket != null) delayedTicket.mergeInto(queuedTicket);
 		
-		tickets.add(ticket);
-		return ticket;
+		return queuedTicket;
 	}
 	
 	/**
-	 * Schedule a new tile to be rendered with a given tile-renderer, but delays the renderTicket so that:<br>
+	 * Schedule a new tile to be rendered with a given tile-renderer and the priority {@link RenderPriority#UPDATE}, but delays the renderTicket so that:<br>
 	 * if another ticket <b>with the same tile and renderer</b> is scheduled before the delay is expired it is merged with this ticket and only rendered once.
 	 * 
 	 * @return the scheduled render-ticket
 	 */
 	public RenderTicket scheduleDelayedRender(WorldTile tile, TileRenderer renderer, long delay) {
+		return scheduleDelayedRender(tile, renderer, RenderPriority.UPDATE, delay);
+	}
+	
+	/**
+	 * Schedule a new tile to be rendered with a given tile-renderer and priority, but delays the renderTicket so that:<br>
+	 * if another ticket <b>with the same tile and renderer</b> is scheduled before the delay is expired it is merged with this ticket and only rendered once.
+	 * 
+	 * @return the scheduled render-ticket
+	 */
+	public RenderTicket scheduleDelayedRender(WorldTile tile, TileRenderer renderer, RenderPriority priority, long delay) {
 		if (delay <= 0)
-			return scheduleRender(tile, renderer);
+			return scheduleRender(tile, renderer, priority);
+		
+		RenderTicket ticket = new RenderTicket(tile, renderer, priority);
 		
-		RenderTicket ticket = new RenderTicket(tile, renderer);
+		//if the tile is already waiting in the queue it will be rendered with the latest world-state anyways
+		RenderTicket pendingTicket = tickets.getPending(ticket);
+		if (pendingTicket != null) return pendingTicket;
 
-		DelayedTicket delayedTicket;
-		synchronized (delayedTickets) {
-			delayedTicket = delayedTickets.putIfAbsent(ticket, new DelayedTicket(ticket, System.currentTimeMillis() + delay));
+		RenderTicket delayedTicket = delayedTickets.schedule(ticket, delay);
+		if (delayedTicket != null) return delayedTicket;
+		
+		journal(ticket, System.currentTimeMillis() + delay);
+		return ticket;
+	}
+	
+	/**
+	 * Cancels all scheduled tickets of the given world, e.g. because the world has been unloaded.<br>
+	 * Tickets that are currently being rendered are not affected.
+	 * 
+	 * @return the number of cancelled tickets
+	 */
+	public int cancelTickets(World world) {
+		Collection<RenderTicket> cancelledTickets = new ArrayList<>();
+		tickets.removeWorld(world.getUUID(), cancelledTickets);
+		delayedTickets.removeIf(ticket -> ticket.getTile().getWorld().getUUID().equals(world.getUUID()), cancelledTickets);
+		return cancel(cancelledTickets);
+	}
+	
+	/**
+	 * Cancels all scheduled tickets of the given world whose tile has its center in the area between min and max (inclusive, x and z block-coordinates).<br>
+	 * Tickets that are currently being rendered are not affected.
+	 * 
+	 * @return the number of cancelled tickets
+	 */
+	public int cancelTickets(World world, Vector2i min, Vector2i max) {
+		Collection<RenderTicket> cancelledTickets = new ArrayList<>();
+		tickets.removeArea(world.getUUID(), min, max, cancelledTickets);
+		delayedTickets.removeIf(ticket -> {
+			if (!ticket.getTile().getWorld().getUUID().equals(world.getUUID())) return false;
+			Vector2i center = RenderTicketQueue.getCenterBlock(ticket);
+			return 
+					center.getX() >= min.getX() && center.getX() <= max.getX() &&
+					center.getY() >= min.getY() && center.getY() <= max.getY();
+		}, cancelledTickets);
+		return cancel(cancelledTickets);
+	}
+	
+	/**
+	 * Cancels all scheduled tickets of the given tile-renderer, e.g. because its map is being reset or reconfigured.<br>
+	 * Tickets that are currently being rendered are not affected.
+	 * 
+	 * @return the number of cancelled tickets
+	 */
+	public int cancelTickets(TileRenderer renderer) {
+		Collection<RenderTicket> cancelledTickets = new ArrayList<>();
+		tickets.removeRenderer(renderer, cancelledTickets);
+		delayedTickets.removeIf(ticket -> ticket.getTileRenderer().equals(renderer), cancelledTickets);
+		return cancel(cancelledTickets);
+	}
+	
+	private int cancel(Collection<RenderTicket> removedTickets) {
+		int count = 0;
+		for (RenderTicket ticket : removedTickets) {
+			if (ticket.completeCancelled()) count++;
 		}
+		return count;
+	}
+	
+	/**
+	 * Restores the tiles that were still scheduled when the journal was last written, and records all tiles 
+	 * that are scheduled from now on for the journal's tile-renderer in the journal.<br>
+	 * Delayed tiles are delayed again by their remaining delay.<br>
+	 * <br>
+	 * Rendered tiles are only recorded as done when {@link TileRenderer#save()} has saved them.<br>
+	 * The journal should be attached before any tiles are scheduled for its tile-renderer,
+	 * and it should be closed after this render-manager has been shut down and the tile-renderer has been saved.
+	 * 
+	 * @param worldResolver resolves the worlds of the restored tiles by their UUID, tiles of unknown worlds (null) are dropped
+	 * @return the number of restored tiles
+	 * @throws IOException if the journal-file could not be read
+	 */
+	public int attachJournal(RenderQueueJournal journal, Function<UUID, World> worldResolver) throws IOException {
+		Collection<RenderQueueJournal.JournalEntry> entries = journal.load(worldResolver);
+		journals.put(journal.getTileRenderer(), journal);
+		journal.getTileRenderer().setJournal(journal);
 		
-		if (delayedTicket != null) return delayedTicket.renderTicket;
+		long now = System.currentTimeMillis();
+		for (RenderQueueJournal.JournalEntry entry : entries) {
+			scheduleDelayedRender(entry.getTile(), journal.getTileRenderer(), entry.getPriority(), entry.getDueTime() - now);
+		}
 		
-		delayScheduleThread.interrupt(); //interrupt to update the waiting time of this tread until the next scheduled render, only if a new ticket has been added to the map
-		return ticket;
+		journal.start();
+		return entries.size();
+	}
+	
+	/**
+	 * Sets the function that ranks the scheduled tickets inside the same {@link RenderPriority}-class.<br>
+	 * All pending tickets are re-ranked with the new function.
+	 */
+	public void setPriorityFunction(TilePriorityFunction priorityFunction) {
+		tickets.setPriorityFunction(priorityFunction);
+	}
+	
+	/**
+	 * Returns the function that ranks the scheduled tickets inside the same {@link RenderPriority}-class
+	 */
+	public TilePriorityFunction getPriorityFunction() {
+		return tickets.getPriorityFunction();
 	}
 	
 	/**
@@ -122,24 +289,29 @@ public RenderTicket scheduleDelayedRender(WorldTile tile, TileRenderer renderer,
 	 * This method can only be invoked once
 	 */
 	public void start() {
-		for(Thread thread : renderThreads) {
-			thread.start();
-		}
-		delayScheduleThread.start();
+		renderThreads.start();
+		delayedTickets.start();
 	}
 	
 	/**
 	 * Pauses the threads from processing more tickets
 	 */
 	public void pause() {
-		this.paused = true;
+		throttle.setPaused(true);
 	}
 
 	/**
 	 * Resumes processing tickets after being paused 
 	 */
 	public void resume() {
-		this.paused = false;
+		throttle.setPaused(false);
+	}
+	
+	/**
+	 * Returns the throttle that limits how fast the render-threads are processing tickets
+	 */
+	public RenderThrottle getThrottle() {
+		return throttle;
 	}
 	
 	/**
@@ -149,10 +321,9 @@ public void resume() {
 	public void shutdown() {
 		if (!shutdown) {
 			shutdown = true;
-			delayScheduleThread.interrupt();
-			for (Thread thread : renderThreads) {
-				thread.interrupt();
-			}
+			delayedTickets.shutdown();
+			unregisterMetrics();
+			renderThreads.shutdown();
 		}
 	}
 	
@@ -161,11 +332,14 @@ public void shutdown() {
 	 * If the timeout is 0, this method blocks without timing out.
 	 */
 	public void awaitShutdown(long timeout, TimeUnit unit) throws InterruptedException {
-		long time = System.currentTimeMillis() + unit.toMillis(timeout);
-		for (Thread thread : renderThreads) {
-			if (timeout > 0) thread.join(Math.max(1, time - System.currentTimeMillis()));
-			else thread.join();
-		}
+		renderThreads.awaitShutdown(timeout, unit);
+	}
+	
+	/**
+	 * Returns the current number of render-threads
+	 */
+	public int getRenderThreadCount() {
+		return renderThreads.getThreadCount();
 	}
 	
 	/**
@@ -174,12 +348,7 @@ public void awaitShutdown(long timeout, TimeUnit unit) throws InterruptedExcepti
 	public Collection<RenderTicket> drainScheduledTickets(){
 		Collection<RenderTicket> drainedTickets = new ArrayList<>(tickets.size());
 		tickets.drainTo(drainedTickets);
-		synchronized (delayedTickets) {
-			for (DelayedTicket ticket : delayedTickets.values()) {
-				drainedTickets.add(ticket.renderTicket);
-			}
-			delayedTickets.clear();
-		}
+		delayedTickets.drainTo(drainedTickets);
 		return drainedTickets;
 	}
 	
@@ -194,93 +363,194 @@ public int getScheduledTicketCount() {
 	 * Returns true if this render-manager is paused
 	 */
 	public boolean isPaused() {
-		return paused;
+		return throttle.isPaused();
 	} 
 	
-	private void renderThread() {
-		while (!shutdown) {
-			try {
-				while (paused) Thread.sleep(250);
-				tickets.take().process();
-			} catch (InterruptedException e) {}
+	/**
+	 * Adds the ticket to the queue, or merges it into an equal ticket that is already pending
+	 * 
+	 * @return the ticket that is queued
+	 */
+	private RenderTicket enqueue(RenderTicket ticket) {
+		ticket.queueTime = System.nanoTime();
+		RenderTicket pendingTicket = tickets.addIfAbsent(ticket);
+		if (pendingTicket == null) {
+			journal(ticket, System.currentTimeMillis());
+			return ticket;
 		}
+		
+		ticket.mergeInto(pendingTicket);
+		return pendingTicket;
 	}
-
-	private void delayScheduleThread() {
-		while (!shutdown) {
+	
+	private void journal(RenderTicket ticket, long dueTime) {
+		RenderQueueJournal journal = journals.get(ticket.getTileRenderer());
+		if (journal == null) return;
+		
+		if (journal.scheduled(ticket, dueTime)) ticket.addListener(journal::done);
+	}
+	
+	private void renderThread(RenderThreadPool.RenderThread thread) {
+		RenderTicketQueue.Worker worker = tickets.createWorker();
+		
+		while (!shutdown && !thread.isRetired()) {
 			try {
-				long minTime = 10000;
+				//take the ticket first, so an idle thread does not hold a token of the throttle while it waits for tickets
+				RenderTicket ticket = worker.take();
+				ticketWaitTime.observeSince(ticket.queueTime);
 				
-				synchronized(delayedTickets) {
-					long now = System.currentTimeMillis();
-					Iterator<DelayedTicket> tileIterator = delayedTickets.values().iterator();
-					while (tileIterator.hasNext()) {
-						DelayedTicket delayedTicket = tileIterator.next();
-						if (delayedTicket.scheduleTime <= now) {
-							tileIterator.remove();
-							tickets.add(delayedTicket.renderTicket);
-						} else {
-							long waitTime = delayedTicket.scheduleTime - now;
-							if (waitTime < minTime) minTime = waitTime;
-						} 
-					}
+				try {
+					throttle.acquire();
+				} catch (InterruptedException e) {
+					//the thread is stopped or retired, so give the ticket back to the queue
+					enqueue(ticket);
+					throw e;
 				}
 				
-				//System.out.println(tickets.size() + " + " + delayedTickets.size() + " = " + getScheduledTicketCount());
-				
-				Thread.sleep(Math.max(minTime, 0));
+				thread.beginTile();
+				try {
+					long throttleValue = throttle.startTile();
+					if (ticket.process()) renderedTiles.mark();
+					throttle.finishTile(throttleValue);
+				} finally {
+					thread.endTile();
+				}
 			} catch (InterruptedException e) {}
 		}
+		
+		worker.release();
 	}
-	
+
+	/**
+	 * A tile that is scheduled to be rendered with a tile-renderer.<br>
+	 * <br>
+	 * The ticket is completed when the tile has been rendered (or rendering failed), or when it has been cancelled before it got rendered.
+	 * The completion can be observed with {@link #addListener(Consumer)} or with the future returned by {@link #getFuture()}.
+	 */
 	public class RenderTicket {
 		
 		private final TileRenderer renderer;
 		private final WorldTile tile;
-		private Exception exception;
-		private boolean done;
+		private volatile RenderPriority priority;
+		private volatile Exception exception;
+		private volatile long queueTime;
 		
-		private Collection<Consumer<RenderTicket>> listener;
+		private final TicketFuture future;
+		private boolean started;
+		private boolean cancelled;
+		private RenderTicket mergedInto;
 		
 		private int hash;
 		
-		private RenderTicket(WorldTile tile, TileRenderer renderer) {
+		private RenderTicket(WorldTile tile, TileRenderer renderer, RenderPriority priority) {
 			this.tile = tile;
 			this.renderer = renderer;
+			this.priority = priority;
 			
-			this.done = false;
 			this.exception = null;
 			
-			this.listener = new ArrayList<>();
+			this.future = new TicketFuture();
+			this.started = false;
+			this.cancelled = false;
+			this.mergedInto = null;
 			
 			this.hash = Objects.hash(this.renderer, this.tile);
 		}
 		
-		private void process() {
+		/**
+		 * Renders the tile, if this ticket has not been cancelled
+		 * 
+		 * @return false if this ticket has been cancelled
+		 */
+		private boolean process() {
 			synchronized (this) {
-				if (this.done) throw new IllegalStateException("Ticket is already done!");
-				
-				try {
-					this.renderer.render(this.tile);
-				} catch (Exception ex) {
-					this.exception = ex;
-				}
-				
-				this.done = true;	
+				if (this.cancelled) return false;
+				if (this.started) throw new IllegalStateException("Ticket is already done!");
+				this.started = true;
+			}
+			
+			try {
+				this.renderer.render(this.tile);
+			} catch (Exception ex) {
+				this.exception = ex;
+			}
+			
+			complete();
+			return true;
+		}
+		
+		private void complete() {
+			if (exception == null) future.complete(this);
+			else future.completeExceptionally(exception);
+		}
+		
+		/**
+		 * Cancels this ticket if it has not been rendered yet, and removes it from the queue.<br>
+		 * If this ticket has been merged with an equal ticket, that ticket is cancelled.
+		 * 
+		 * @return true if the ticket has been cancelled
+		 */
+		public boolean cancel() {
+			RenderTicket mergedInto;
+			synchronized (this) {
+				mergedInto = this.mergedInto;
+				if (mergedInto == null && (this.started || this.cancelled)) return false;
 			}
 			
-			for (Consumer<RenderTicket> listener : this.listener) {
-				listener.accept(this);
+			if (mergedInto != null) return mergedInto.cancel();
+			
+			tickets.remove(this);
+			delayedTickets.removeExact(this);
+			
+			return completeCancelled();
+		}
+		
+		/**
+		 * Marks this ticket as cancelled if it has not been started yet and completes the future
+		 */
+		private boolean completeCancelled() {
+			synchronized (this) {
+				if (this.started || this.cancelled) return false;
+				this.cancelled = true;
 			}
 			
-			this.listener.clear();
+			future.cancelTicket();
+			return true;
+		}
+		
+		/**
+		 * Lets this ticket complete together with the given equal ticket, instead of being rendered itself
+		 */
+		private void mergeInto(RenderTicket target) {
+			if (target == this) return;
+			
+			synchronized (this) {
+				if (this.started || this.cancelled) return;
+				this.started = true;
+				this.mergedInto = target;
+			}
+			
+			target.future.whenComplete((ticket, ex) -> {
+				if (target.isCancelled()) {
+					synchronized (this) {
+						this.cancelled = true;
+					}
+					future.cancelTicket();
+				} else {
+					this.exception = target.exception;
+					complete();
+				}
+			});
 		}
 		
 		/**
 		 * Checks if this ticket has thrown any errors while being processed
+		 * 
+		 * @throws CancellationException if the ticket has been cancelled
 		 */
 		public void check() throws IOException, ChunkNotGeneratedException {
-			if (!done) throw new IllegalStateException("Ticket is not yet done!");
+			if (!isDone()) throw new IllegalStateException("Ticket is not yet done!");
+			if (isCancelled()) throw new CancellationException("Ticket has been cancelled!");
 			
 			if (exception == null) return;
 			if (exception instanceof IOException) throw (IOException) exception;
@@ -291,20 +561,35 @@ public void check() throws IOException, ChunkNotGeneratedException {
 		}
 		
 		/**
-		 * Checks if this ticket has been processed yet
+		 * Checks if this ticket has been processed or cancelled yet
 		 */
 		public boolean isDone() {
-			return done;
+			return future.isDone();
 		}
 		
 		/**
-		 * <p>Adds a listener that gets called when the ticket is done.<br>
+		 * Checks if this ticket has been cancelled
+		 */
+		public boolean isCancelled() {
+			return future.isCancelled();
+		}
+		
+		/**
+		 * <p>Adds a listener that gets called when the ticket is done or cancelled.<br>
 		 * The order the listeners are called is not defined.</p>
 		 * <p>If the ticket is already done, the listener is called immediately</p>
 		 */
 		public void addListener(Consumer<RenderTicket> listener) {
-			if (isDone()) listener.accept(this);
-			else this.listener.add(listener);
+			future.whenComplete((ticket, ex) -> listener.accept(this));
+		}
+		
+		/**
+		 * Returns a future that completes with this ticket when the tile has been rendered.<br>
+		 * If rendering failed, the future completes exceptionally with the thrown exception. 
+		 * Cancelling the future cancels this ticket (see {@link #cancel()}).
+		 */
+		public CompletableFuture<RenderTicket> getFuture() {
+			return future;
 		}
 		
 		@Override
@@ -329,16 +614,27 @@ public TileRenderer getTileRenderer() {
 			return renderer;
 		}
 		
-	}
-	
-	private class DelayedTicket {
-		public final RenderTicket renderTicket;
-		public final long scheduleTime;
-
-		public DelayedTicket(RenderTicket renderTicket, long scheduleTime) {
-			this.renderTicket = renderTicket;
-			this.scheduleTime = scheduleTime;
+		public RenderPriority getPriority() {
+			return priority;
 		}
+		
+		void setPriority(RenderPriority priority) {
+			this.priority = priority;
+		}
+		
+		private class TicketFuture extends CompletableFuture<RenderTicket> {
+			
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				return RenderTicket.this.cancel();
+			}
+			
+			private void cancelTicket() {
+				super.cancel(false);
+			}
+			
+		}
+		
 	}
 	
 }
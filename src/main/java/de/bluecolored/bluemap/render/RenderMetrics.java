@@ -0,0 +1,69 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+import de.bluecolored.bluemap.metrics.Counter;
+import de.bluecolored.bluemap.metrics.Histogram;
+import de.bluecolored.bluemap.metrics.MetricRegistry;
+
+/**
+ * The metrics that the render-components record in the {@link MetricRegistry#global() global metric-registry}
+ */
+public class RenderMetrics {
+	
+	public static final String STAGE_DURATION = "bluemap_render_stage_duration_seconds";
+	public static final String TILE_DURATION = "bluemap_render_tile_duration_seconds";
+
+	/** Loading the world-data of a tile */
+	public static final Histogram WORLD_READ = stage("world_read");
+	
+	/** Computing the fingerprint of a tile to check if it changed */
+	public static final Histogram FINGERPRINT = stage("fingerprint");
+	
+	/** Reading the blocks and building the block-models of a tile */
+	public static final Histogram HIRES_MODEL = stage("hires_model");
+	
+	/** Converting a hires-model to buffer-geometry json */
+	public static final Histogram GEOMETRY_JSON = stage("geometry_json");
+	
+	/** Compressing and writing a hires-model file (on the saving-executor) */
+	public static final Histogram HIRES_SAVE = stage("hires_save");
+	
+	/** Updating the lowres-models with a rendered hires-model */
+	public static final Histogram LOWRES_UPDATE = stage("lowres_update");
+	
+	/** Rendering a whole tile with a {@link TileRenderer} */
+	public static final Histogram TILE = MetricRegistry.global().histogram(TILE_DURATION, "Time spent rendering a tile.");
+	
+	/** Tiles that were not rendered because their fingerprint did not change */
+	public static final Counter UNCHANGED_TILES = MetricRegistry.global().counter("bluemap_render_tiles_unchanged_total", "Number of tiles that were skipped because their blocks did not change.");
+	
+	private RenderMetrics() {}
+	
+	private static Histogram stage(String stage) {
+		return MetricRegistry.global().histogram(STAGE_DURATION, "Time spent in each stage of rendering a tile.", "stage", stage);
+	}
+	
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+/**
+ * The priority-class of a render-ticket.<br>
+ * Tickets of a higher class (lower ordinal) are always rendered before tickets of a lower class,
+ * inside a class the tickets are ranked by the {@link TilePriorityFunction} of the {@link RenderManager}.
+ */
+public enum RenderPriority {
+
+	/**
+	 * Tiles that someone is actively waiting for, e.g. because a player just built something
+	 */
+	INTERACTIVE,
+	
+	/**
+	 * Tiles that need to be updated because something changed in the world
+	 */
+	UPDATE,
+	
+	/**
+	 * Tiles of large render-jobs like a full-world render
+	 */
+	BULK;
+	
+}
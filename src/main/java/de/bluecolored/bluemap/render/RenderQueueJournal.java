@@ -0,0 +1,431 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+import com.flowpowered.math.vector.Vector2i;
+
+import de.bluecolored.bluemap.api.World;
+import de.bluecolored.bluemap.logger.Logger;
+import de.bluecolored.bluemap.render.RenderManager.RenderTicket;
+import de.bluecolored.bluemap.util.UpdateDeamon;
+import de.bluecolored.bluemap.util.Updateable;
+
+/**
+ * An append-only journal on disk of the tiles that are scheduled for one {@link TileRenderer}, 
+ * so the scheduled tiles can be restored after a restart with {@link RenderManager#attachJournal(RenderQueueJournal, Function)}.<br>
+ * <br>
+ * <i>
+ * Implementation note:<br>
+ * Scheduled and finished tiles are collected in memory and appended to the file in one sequential write on each flush.
+ * When the file holds a lot more records than there are scheduled tiles, it is compacted by rewriting only the scheduled tiles to a new file.<br>
+ * A tile stays scheduled in the journal until its rendered models have been saved with {@link TileRenderer#save()}, 
+ * so a tile whose render completed but whose models were not saved yet is rendered again after a crash.
+ * </i>
+ */
+public class RenderQueueJournal implements Updateable, Closeable {
+	
+	private static final int MAGIC = 0x424d524a; //BMRJ
+	private static final int VERSION = 1;
+	
+	private static final byte RECORD_SCHEDULE = 1;
+	private static final byte RECORD_DONE = 2;
+	
+	private static final int HEADER_SIZE = 4 + 4;
+	private static final int TILE_SIZE = 8 + 8 + 4 + 4;
+	private static final int RECORD_SCHEDULE_SIZE = 1 + TILE_SIZE + 1 + 8;
+	private static final int RECORD_DONE_SIZE = 1 + TILE_SIZE;
+	
+	private static final int COMPACT_MIN_RECORDS = 10000;
+	private static final int COMPACT_RATIO = 4;
+	
+	private final Path file;
+	private final TileRenderer renderer;
+	private final long flushInterval;
+	private final Logger logger;
+	
+	private Map<WorldTile, RenderTicket> scheduledTickets;
+	private Map<WorldTile, Long> dueTimes;
+	private List<RenderTicket> completedTickets;
+	
+	private ByteArrayOutputStream buffer;
+	private DataOutputStream bufferOut;
+	private int bufferedRecords;
+	private int fileRecords;
+	
+	private UpdateDeamon flushDeamon;
+	private boolean closed;
+	
+	public RenderQueueJournal(Path file, TileRenderer renderer) {
+		this(file, renderer, 1000, Logger.stdOut());
+	}
+	
+	/**
+	 * @param flushInterval the interval in milliseconds in which the collected changes are written to the file
+	 */
+	public RenderQueueJournal(Path file, TileRenderer renderer, long flushInterval, Logger logger) {
+		this.file = file;
+		this.renderer = renderer;
+		this.flushInterval = flushInterval;
+		this.logger = logger;
+		
+		this.scheduledTickets = new HashMap<>();
+		this.dueTimes = new HashMap<>();
+		this.completedTickets = new ArrayList<>();
+		
+		this.buffer = new ByteArrayOutputStream();
+		this.bufferOut = new DataOutputStream(buffer);
+		this.bufferedRecords = 0;
+		this.fileRecords = 0;
+		
+		this.flushDeamon = null;
+		this.closed = false;
+	}
+	
+	/**
+	 * Reads all tiles that were still scheduled when the journal was last written.<br>
+	 * Tiles of worlds that the worldResolver returns null for are dropped.<br>
+	 * <br>
+	 * An incompletely written or corrupted end of the file (e.g. after a crash) is cut off, so new records are appended directly after the last complete record.
+	 */
+	synchronized Collection<JournalEntry> load(Function<UUID, World> worldResolver) throws IOException {
+		Map<JournalKey, JournalEntry> entries = new LinkedHashMap<>();
+		fileRecords = 0;
+		
+		if (Files.exists(file)) {
+			long validLength = 0; //the length of the header and all complete records
+			
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				if (in.readInt() != MAGIC) throw new IOException("File is not a render-queue journal: " + file);
+				int version = in.readInt();
+				if (version != VERSION) throw new IOException("Unsupported render-queue journal version " + version + ": " + file);
+				validLength = HEADER_SIZE;
+				
+				while (true) {
+					byte type = in.readByte();
+					JournalKey key = new JournalKey(new UUID(in.readLong(), in.readLong()), in.readInt(), in.readInt());
+					
+					if (type == RECORD_SCHEDULE) {
+						int priority = in.readByte();
+						long dueTime = in.readLong();
+						if (priority < 0 || priority >= RenderPriority.values().length) {
+							logger.logWarning("Render-queue journal has an invalid priority " + priority + " at byte " + validLength + ", dropping the rest of it: " + file);
+							break;
+						}
+						
+						entries.put(key, new JournalEntry(key, RenderPriority.values()[priority], dueTime));
+						validLength += RECORD_SCHEDULE_SIZE;
+					} else if (type == RECORD_DONE) {
+						entries.remove(key);
+						validLength += RECORD_DONE_SIZE;
+					} else {
+						logger.logWarning("Render-queue journal has an unknown record type " + type + " at byte " + validLength + ", dropping the rest of it: " + file);
+						break;
+					}
+					
+					fileRecords++;
+				}
+			} catch (EOFException ex) {
+				//the header or the last record might have been written incompletely
+			}
+			
+			if (validLength == 0) {
+				//the header has been written incompletely, so there is nothing to restore and the file is started anew
+				Files.delete(file);
+			} else if (Files.size(file) > validLength) {
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+					channel.truncate(validLength);
+				}
+			}
+		}
+		
+		Collection<JournalEntry> result = new ArrayList<>(entries.size());
+		for (JournalEntry entry : entries.values()) {
+			World world = worldResolver.apply(entry.key.world);
+			if (world == null) continue;
+			
+			entry.tile = new WorldTile(world, new Vector2i(entry.key.x, entry.key.z));
+			result.add(entry);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Starts to periodically flush the changes to the file
+	 */
+	synchronized void start() {
+		if (flushDeamon != null) return;
+		
+		flushDeamon = new UpdateDeamon(this, flushInterval);
+		flushDeamon.setName("BlueMap-RenderQueueJournal");
+		flushDeamon.start();
+	}
+	
+	/**
+	 * Records that the ticket has been scheduled and should be rendered at the given time (System.currentTimeMillis())
+	 * 
+	 * @return true if the ticket was not recorded before
+	 */
+	synchronized boolean scheduled(RenderTicket ticket, long dueTime) {
+		if (closed) return false;
+		
+		WorldTile tile = ticket.getTile();
+		RenderTicket previous = scheduledTickets.put(tile, ticket);
+		dueTimes.put(tile, dueTime);
+		
+		try {
+			bufferOut.writeByte(RECORD_SCHEDULE);
+			writeTile(tile);
+			bufferOut.writeByte(ticket.getPriority().ordinal());
+			bufferOut.writeLong(dueTime);
+			bufferedRecords++;
+		} catch (IOException ex) {
+			throw new AssertionError(ex); //can't happen when writing to a byte-array
+		}
+		
+		return previous != ticket;
+	}
+	
+	/**
+	 * Remembers that the ticket is done or has been cancelled, if it is still the ticket that is recorded for its tile.<br>
+	 * The tile stays scheduled in the journal until the ticket is committed with {@link #commitDone(Collection)}, after the rendered models have been saved.
+	 */
+	synchronized void done(RenderTicket ticket) {
+		if (closed) return;
+		if (scheduledTickets.get(ticket.getTile()) != ticket) return;
+		
+		completedTickets.add(ticket);
+	}
+	
+	/**
+	 * Returns and forgets all tickets that have been completed (see {@link #done(RenderTicket)}) since the last call.<br>
+	 * Tickets that are not committed afterwards stay scheduled in the journal, so their tiles are rendered again after a restart.
+	 */
+	synchronized List<RenderTicket> takeCompleted() {
+		List<RenderTicket> completed = completedTickets;
+		completedTickets = new ArrayList<>();
+		return completed;
+	}
+	
+	/**
+	 * Records that the completed tickets are done, this should only be done after the rendered models of their tiles have been saved.<br>
+	 * Tickets that are not the recorded ticket for their tile anymore (the tile has been scheduled again) are skipped.
+	 */
+	synchronized void commitDone(Collection<RenderTicket> tickets) {
+		if (closed) return;
+		
+		for (RenderTicket ticket : tickets) {
+			WorldTile tile = ticket.getTile();
+			if (!scheduledTickets.remove(tile, ticket)) continue;
+			dueTimes.remove(tile);
+			
+			try {
+				bufferOut.writeByte(RECORD_DONE);
+				writeTile(tile);
+				bufferedRecords++;
+			} catch (IOException ex) {
+				throw new AssertionError(ex); //can't happen when writing to a byte-array
+			}
+		}
+	}
+	
+	/**
+	 * Writes the {@link #TILE_SIZE} bytes of the tile-key of a record
+	 */
+	private void writeTile(WorldTile tile) throws IOException {
+		UUID world = tile.getWorld().getUUID();
+		bufferOut.writeLong(world.getMostSignificantBits());
+		bufferOut.writeLong(world.getLeastSignificantBits());
+		bufferOut.writeInt(tile.getTile().getX());
+		bufferOut.writeInt(tile.getTile().getY());
+	}
+	
+	@Override
+	public void update() {
+		try {
+			flush();
+		} catch (IOException ex) {
+			logger.noFloodError("renderQueueJournalFlush-" + file, "Failed to write render-queue journal " + file, ex);
+		}
+	}
+	
+	/**
+	 * Appends all collected changes to the file, and compacts the file if it grew too large
+	 */
+	public synchronized void flush() throws IOException {
+		if (buffer.size() == 0) return;
+		
+		fileRecords += bufferedRecords;
+		
+		if (fileRecords > Math.max(COMPACT_MIN_RECORDS, scheduledTickets.size() * COMPACT_RATIO)) {
+			compact();
+		} else {
+			writeFile(file, buffer.toByteArray(), true);
+		}
+		
+		buffer.reset();
+		bufferedRecords = 0;
+	}
+	
+	private void compact() throws IOException {
+		ByteArrayOutputStream compacted = new ByteArrayOutputStream();
+		DataOutputStream compactedOut = new DataOutputStream(compacted);
+		for (Map.Entry<WorldTile, RenderTicket> entry : scheduledTickets.entrySet()) {
+			UUID world = entry.getKey().getWorld().getUUID();
+			compactedOut.writeByte(RECORD_SCHEDULE);
+			compactedOut.writeLong(world.getMostSignificantBits());
+			compactedOut.writeLong(world.getLeastSignificantBits());
+			compactedOut.writeInt(entry.getKey().getTile().getX());
+			compactedOut.writeInt(entry.getKey().getTile().getY());
+			compactedOut.writeByte(entry.getValue().getPriority().ordinal());
+			compactedOut.writeLong(dueTimes.get(entry.getKey()));
+		}
+		compactedOut.flush();
+		
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		writeFile(tempFile, compacted.toByteArray(), false);
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		
+		fileRecords = scheduledTickets.size();
+	}
+	
+	private static void writeFile(Path file, byte[] data, boolean append) throws IOException {
+		if (file.getParent() != null) Files.createDirectories(file.getParent());
+		
+		boolean writeHeader = !append || !Files.exists(file) || Files.size(file) == 0;
+		
+		try (OutputStream out = append ? 
+				Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND) : 
+				Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+			) {
+			
+			if (writeHeader) {
+				ByteArrayOutputStream header = new ByteArrayOutputStream(data.length + 8);
+				DataOutputStream headerOut = new DataOutputStream(header);
+				headerOut.writeInt(MAGIC);
+				headerOut.writeInt(VERSION);
+				headerOut.write(data);
+				data = header.toByteArray();
+			}
+			
+			out.write(data);
+		}
+	}
+	
+	/**
+	 * Flushes all collected changes and stops recording further changes
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) return;
+		
+		if (flushDeamon != null) flushDeamon.interrupt();
+		flush();
+		closed = true;
+	}
+	
+	public Path getFile() {
+		return file;
+	}
+	
+	public TileRenderer getTileRenderer() {
+		return renderer;
+	}
+	
+	static class JournalEntry {
+		
+		private final JournalKey key;
+		private final RenderPriority priority;
+		private final long dueTime;
+		private WorldTile tile;
+		
+		private JournalEntry(JournalKey key, RenderPriority priority, long dueTime) {
+			this.key = key;
+			this.priority = priority;
+			this.dueTime = dueTime;
+		}
+		
+		public WorldTile getTile() {
+			return tile;
+		}
+		
+		public RenderPriority getPriority() {
+			return priority;
+		}
+		
+		public long getDueTime() {
+			return dueTime;
+		}
+		
+	}
+	
+	private static class JournalKey {
+		
+		private final UUID world;
+		private final int x, z;
+		
+		public JournalKey(UUID world, int x, int z) {
+			this.world = world;
+			this.x = x;
+			this.z = z;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof JournalKey)) return false;
+			JournalKey that = (JournalKey) obj;
+			return this.x == that.x && this.z == that.z && this.world.equals(that.world);
+		}
+		
+		@Override
+		public int hashCode() {
+			return (world.hashCode() * 31 + x) * 31 + z;
+		}
+		
+	}
+	
+}
@@ -31,12 +31,87 @@ public interface RenderSettings {
 	boolean isExcludeFacesWithoutSunlight();
 
 	boolean isLighting();
+	
+	/**
+	 * If true, the columns of a tile are scanned from the top down and the scan stops as soon as all blocks below are hidden from all map viewing angles.<br>
+	 * This skips most of the underground, but blocks that are only visible through caves or holes that are not lit by the sun might be missing.
+	 */
+	default boolean isSkipOccludedBlocks() {
+		return false;
+	}
+
+	/**
+	 * If true, adjacent coplanar block-faces with the same texture, color and light are merged into larger faces.<br>
+	 * This reduces the size of the hires-tiles a lot, but the textures have to be rendered with repeat-wrapping.
+	 */
+	default boolean isGreedyMeshing() {
+		return false;
+	}
+
+	/**
+	 * If true, faces that can not be seen from anywhere are dropped:
+	 * faces that are fully enclosed by occluding blocks, with no path through non-occluding blocks to the outside (e.g. the walls of closed caves).<br>
+	 * The camera of the web-viewer can not get into such enclosed spaces, so this does not change anything visible.
+	 */
+	default boolean isViewConstrainedCulling() {
+		return false;
+	}
+
+	/**
+	 * If greater than 0, hires-tiles that are wider than this are split into strips of columns with this width (in blocks),
+	 * which are rendered in parallel on the common fork-join pool.<br>
+	 * This only changes how fast a single tile is rendered, the rendered model is the same.
+	 */
+	default int getParallelStripWidth() {
+		return 0;
+	}
+
+	/**
+	 * Blocks below this y-coordinate are not rendered (but are still used as neighbours, e.g. for face-culling and light).<br>
+	 * The models keep their world-coordinates, so the bounds don't change where the tiles are placed.
+	 */
+	default int getMinY() {
+		return Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Blocks above this y-coordinate are not rendered (but are still used as neighbours, e.g. for face-culling and light).<br>
+	 * The models keep their world-coordinates, so the bounds don't change where the tiles are placed.
+	 */
+	default int getMaxY() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * If greater than 0, only the blocks of a column that are at most this many blocks below the highest block of the column are rendered
+	 * (the highest block itself is always rendered if it is in the y-bounds).<br>
+	 * This renders only the surface of the world, caves and overhangs that are deeper than this are cut off.
+	 */
+	default int getSurfaceDepth() {
+		return 0;
+	}
+
+	/**
+	 * If true, a simplified level-of-detail variant is saved next to each hires-tile, 
+	 * which the web-viewer can show in the middle distance (see {@link de.bluecolored.bluemap.web.WebSettings#setHiresLodViewDistance(float, String)}).
+	 */
+	default boolean isSaveHiresLod() {
+		return false;
+	}
 
 	default RenderSettings copy() {
 		return new StaticRenderSettings(
 				isAmbientOcclusion(),
 				isLighting(),
-				isExcludeFacesWithoutSunlight()
+				isExcludeFacesWithoutSunlight(),
+				isSkipOccludedBlocks(),
+				isGreedyMeshing(),
+				isViewConstrainedCulling(),
+				getParallelStripWidth(),
+				getMinY(),
+				getMaxY(),
+				getSurfaceDepth(),
+				isSaveHiresLod()
 			);
 	}
 	
@@ -45,11 +120,27 @@ class StaticRenderSettings implements RenderSettings {
 		private boolean ambientOcclusion;
 		private boolean lighting;
 		private boolean excludeFacesWithoutSunlight;
+		private boolean skipOccludedBlocks;
+		private boolean greedyMeshing;
+		private boolean viewConstrainedCulling;
+		private int parallelStripWidth;
+		private int minY;
+		private int maxY;
+		private int surfaceDepth;
+		private boolean saveHiresLod;
 		
-		private StaticRenderSettings(boolean ambientOcclusion, boolean lighting, boolean excludeFacesWithoutSunlight) {
+		private StaticRenderSettings(boolean ambientOcclusion, boolean lighting, boolean excludeFacesWithoutSunlight, boolean skipOccludedBlocks, boolean greedyMeshing, boolean viewConstrainedCulling, int parallelStripWidth, int minY, int maxY, int surfaceDepth, boolean saveHiresLod) {
 			this.ambientOcclusion = ambientOcclusion;
 			this.lighting = lighting;
 			this.excludeFacesWithoutSunlight = excludeFacesWithoutSunlight;
+			this.skipOccludedBlocks = skipOccludedBlocks;
+			this.greedyMeshing = greedyMeshing;
+			this.viewConstrainedCulling = viewConstrainedCulling;
+			this.parallelStripWidth = parallelStripWidth;
+			this.minY = minY;
+			this.maxY = maxY;
+			this.surfaceDepth = surfaceDepth;
+			this.saveHiresLod = saveHiresLod;
 		}
 
 		public boolean isAmbientOcclusion() {
@@ -63,6 +154,38 @@ public boolean isLighting() {
 		public boolean isExcludeFacesWithoutSunlight() {
 			return excludeFacesWithoutSunlight;
 		}
+
+		public boolean isSkipOccludedBlocks() {
+			return skipOccludedBlocks;
+		}
+
+		public boolean isGreedyMeshing() {
+			return greedyMeshing;
+		}
+
+		public boolean isViewConstrainedCulling() {
+			return viewConstrainedCulling;
+		}
+
+		public int getParallelStripWidth() {
+			return parallelStripWidth;
+		}
+
+		public int getMinY() {
+			return minY;
+		}
+
+		public int getMaxY() {
+			return maxY;
+		}
+
+		public int getSurfaceDepth() {
+			return surfaceDepth;
+		}
+
+		public boolean isSaveHiresLod() {
+			return saveHiresLod;
+		}
 		
 	}
 	
@@ -0,0 +1,327 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import de.bluecolored.bluemap.metrics.Counter;
+import de.bluecolored.bluemap.metrics.Gauge;
+import de.bluecolored.bluemap.metrics.MetricRegistry;
+
+/**
+ * A pool of render-threads that grows and shrinks between a minimum and a maximum size.<br>
+ * <br>
+ * Every few seconds the pool decides if it should change its size:
+ * <ul>
+ * <li>It shrinks if the load-signal of the {@link RenderThrottle} is close to its max-load, or the system is overloaded (system load-average above the number of processors)</li>
+ * <li>It grows if there are more tickets waiting than threads, as long as the load is low and the system has cpu to spare. 
+ * If the render-threads are mostly waiting on I/O instead of using their cpu, the pool may grow beyond the number of processors.</li>
+ * <li>It shrinks if there are no tickets waiting</li>
+ * </ul>
+ * A thread that is removed finishes the tile it is currently rendering first.
+ */
+class RenderThreadPool {
+	
+	private static final long ADJUST_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+	private static final double SHRINK_LOAD_RATIO = 0.75;
+	private static final double GROW_LOAD_RATIO = 0.5;
+	private static final double MAX_SYSTEM_LOAD = 1.0; //per processor
+	private static final double GROW_SYSTEM_LOAD = 0.8; //per processor
+	private static final double IO_BOUND_UTILIZATION = 0.6;
+	
+	private static final String METRIC_THREADS = "bluemap_render_threads";
+	private static final String METRIC_UTILIZATION = "bluemap_render_thread_cpu_utilization";
+	private static final String METRIC_ADJUSTMENTS = "bluemap_render_thread_pool_adjustments_total";
+	
+	private final String name;
+	private final int minThreads, maxThreads;
+	private final Consumer<RenderThread> renderLoop;
+	private final IntSupplier backlog;
+	private final RenderThrottle throttle;
+	
+	private final ThreadMXBean threadBean;
+	private final OperatingSystemMXBean osBean;
+	private final int processorCount;
+	
+	private List<RenderThread> threads;
+	private List<RenderThread> retiredThreads;
+	private int nextThreadNumber;
+	
+	private Thread controlThread;
+	private volatile boolean shutdown;
+	
+	private long lastCpuTime, lastMeasureTime;
+	private volatile double utilization;
+	
+	private final String metricsLabel;
+	
+	/**
+	 * @param renderLoop the code that each render-thread runs, it has to return when the thread is {@link RenderThread#isRetired() retired}
+	 * @param backlog supplies the number of tickets that are waiting to be rendered
+	 */
+	public RenderThreadPool(String name, int minThreads, int maxThreads, Consumer<RenderThread> renderLoop, IntSupplier backlog, RenderThrottle throttle, String metricsLabel) {
+		if (minThreads < 1) throw new IllegalArgumentException("There has to be at least one render-thread!");
+		if (maxThreads < minThreads) throw new IllegalArgumentException("The maximum number of threads can not be smaller than the minimum!");
+		
+		this.name = name;
+		this.minThreads = minThreads;
+		this.maxThreads = maxThreads;
+		this.renderLoop = renderLoop;
+		this.backlog = backlog;
+		this.throttle = throttle;
+		
+		this.threadBean = ManagementFactory.getThreadMXBean();
+		this.osBean = ManagementFactory.getOperatingSystemMXBean();
+		this.processorCount = Runtime.getRuntime().availableProcessors();
+		
+		this.threads = new ArrayList<>();
+		this.retiredThreads = new ArrayList<>();
+		this.nextThreadNumber = 0;
+		
+		this.controlThread = new Thread(this::controlLoop);
+		this.controlThread.setName(name + "-poolControl");
+		this.controlThread.setDaemon(true);
+		this.shutdown = false;
+		
+		this.utilization = 0;
+		
+		this.metricsLabel = metricsLabel;
+		MetricRegistry metrics = MetricRegistry.global();
+		metrics.register(METRIC_THREADS, "Current number of render-threads.", new Gauge(this::getThreadCount), "manager", metricsLabel);
+		metrics.register(METRIC_UTILIZATION, "Average cpu-usage of the render-threads (1 = all threads are using a full core).", new Gauge(() -> utilization), "manager", metricsLabel);
+	}
+	
+	/**
+	 * Starts the minimum number of threads, and starts adjusting the pool-size if the minimum and maximum are different
+	 */
+	public synchronized void start() {
+		for (int i = 0; i < minThreads; i++) {
+			addThread();
+		}
+		
+		lastMeasureTime = System.nanoTime();
+		lastCpuTime = measureCpuTime();
+		
+		if (minThreads != maxThreads) controlThread.start();
+	}
+	
+	public synchronized void shutdown() {
+		shutdown = true;
+		controlThread.interrupt();
+		
+		for (RenderThread thread : threads) {
+			thread.interrupt();
+		}
+		
+		MetricRegistry metrics = MetricRegistry.global();
+		metrics.unregister(METRIC_THREADS, "manager", metricsLabel);
+		metrics.unregister(METRIC_UTILIZATION, "manager", metricsLabel);
+		for (String action : new String[] {"grow", "shrink"}) {
+			for (String reason : new String[] {"backlog", "load", "idle"}) {
+				metrics.unregister(METRIC_ADJUSTMENTS, "manager", metricsLabel, "action", action, "reason", reason);
+			}
+		}
+	}
+	
+	/**
+	 * Blocks until all threads have been stopped, the timeout has been reached, or the thread gets interrupted.<br>
+	 * If the timeout is 0, this method blocks without timing out.
+	 */
+	public void awaitShutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		List<RenderThread> threads;
+		synchronized (this) {
+			threads = new ArrayList<>(this.threads);
+			threads.addAll(retiredThreads);
+		}
+		
+		long time = System.currentTimeMillis() + unit.toMillis(timeout);
+		for (Thread thread : threads) {
+			if (timeout > 0) thread.join(Math.max(1, time - System.currentTimeMillis()));
+			else thread.join();
+		}
+	}
+	
+	public synchronized int getThreadCount() {
+		return threads.size();
+	}
+	
+	public int getMinThreads() {
+		return minThreads;
+	}
+	
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+	
+	/**
+	 * Returns the average cpu-usage of the render-threads in the last adjust-interval, where 1 means that all threads used a full core
+	 */
+	public double getUtilization() {
+		return utilization;
+	}
+	
+	private void controlLoop() {
+		while (!shutdown) {
+			try {
+				Thread.sleep(ADJUST_INTERVAL);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			
+			adjust();
+		}
+	}
+	
+	private synchronized void adjust() {
+		if (shutdown) return;
+		
+		retiredThreads.removeIf(thread -> !thread.isAlive());
+		
+		long now = System.nanoTime();
+		long cpuTime = measureCpuTime();
+		if (cpuTime >= 0 && lastCpuTime >= 0 && now > lastMeasureTime) {
+			utilization = (double) (cpuTime - lastCpuTime) / ((now - lastMeasureTime) * (double) threads.size());
+		}
+		lastCpuTime = cpuTime;
+		lastMeasureTime = now;
+		
+		if (throttle.isPaused()) return;
+		
+		int size = threads.size();
+		int backlog = this.backlog.getAsInt();
+		double loadRatio = throttle.getLoadRatio();
+		double systemLoad = osBean.getSystemLoadAverage() / processorCount; //negative if not available
+		
+		if (size > minThreads && (loadRatio >= SHRINK_LOAD_RATIO || systemLoad > MAX_SYSTEM_LOAD)) {
+			removeThread();
+			countAdjustment("shrink", "load");
+			return;
+		}
+		
+		if (
+				size < maxThreads && 
+				backlog > size && 
+				loadRatio < GROW_LOAD_RATIO && 
+				systemLoad < GROW_SYSTEM_LOAD &&
+				(size < processorCount || utilization < IO_BOUND_UTILIZATION)
+			) {
+			addThread();
+			countAdjustment("grow", "backlog");
+			return;
+		}
+		
+		if (size > minThreads && backlog == 0) {
+			removeThread();
+			countAdjustment("shrink", "idle");
+		}
+	}
+	
+	private void addThread() {
+		RenderThread thread = new RenderThread();
+		thread.setName(name + "-" + nextThreadNumber++);
+		thread.setDaemon(true);
+		threads.add(thread);
+		thread.start();
+	}
+	
+	private void removeThread() {
+		RenderThread thread = threads.remove(threads.size() - 1);
+		thread.retire();
+		retiredThreads.add(thread);
+		
+		//the cpu-time of the removed thread is not measured anymore
+		lastCpuTime = measureCpuTime();
+	}
+	
+	/**
+	 * Returns the summed cpu-time of all current render-threads in nanoseconds, or -1 if it can not be measured
+	 */
+	private long measureCpuTime() {
+		if (!threadBean.isThreadCpuTimeSupported() || !threadBean.isThreadCpuTimeEnabled()) return -1;
+		
+		long sum = 0;
+		for (RenderThread thread : threads) {
+			long time = threadBean.getThreadCpuTime(thread.getId());
+			if (time > 0) sum += time;
+		}
+		return sum;
+	}
+	
+	private void countAdjustment(String action, String reason) {
+		Counter counter = MetricRegistry.global().counter(METRIC_ADJUSTMENTS, "Number of times the render-thread-pool changed its size, and why.", "manager", metricsLabel, "action", action, "reason", reason);
+		counter.increment();
+	}
+	
+	class RenderThread extends Thread {
+		
+		private boolean retired;
+		private boolean rendering;
+		
+		private RenderThread() {
+			this.retired = false;
+			this.rendering = false;
+		}
+		
+		@Override
+		public void run() {
+			renderLoop.accept(this);
+		}
+		
+		/**
+		 * Returns true if this thread has been removed from the pool or the pool has been shut down, and should stop rendering
+		 */
+		public synchronized boolean isRetired() {
+			return retired || shutdown;
+		}
+		
+		/**
+		 * Marks that this thread starts to render a tile, so it won't be interrupted when it gets retired
+		 */
+		public synchronized void beginTile() {
+			rendering = true;
+			Thread.interrupted(); //clear an interrupt that was meant to wake this thread while it was waiting
+		}
+		
+		public synchronized void endTile() {
+			rendering = false;
+		}
+		
+		private synchronized void retire() {
+			retired = true;
+			
+			//wake the thread if it is waiting for tickets, but don't interrupt any rendering
+			if (!rendering) interrupt();
+		}
+		
+	}
+	
+}
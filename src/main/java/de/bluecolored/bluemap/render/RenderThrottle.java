@@ -0,0 +1,289 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides when the render-threads of a {@link RenderManager} are allowed to render the next tile.<br>
+ * <br>
+ * All limits can be combined, a limit that is set to 0 (or null) is disabled:
+ * <ul>
+ * <li><b>max tiles per second:</b> A token-bucket that allows short bursts of up to one second worth of tiles.</li>
+ * <li><b>max cpu usage:</b> The cpu-time of the render-threads is measured with the {@link ThreadMXBean}. 
+ * Each rendered tile consumes its cpu-time from a budget that refills with the given fraction of all available processors.</li>
+ * <li><b>load signal:</b> No tiles are rendered while the {@link RenderLoadSignal} reports a load equal or above the max-load.</li>
+ * </ul>
+ * If a limit is hit, the render-threads block on a condition until the limit allows rendering again (or a setting changes).
+ */
+public class RenderThrottle {
+	
+	private static final long LOAD_RECHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	
+	private final ReentrantLock lock;
+	private final Condition changed;
+	
+	private final ThreadMXBean threadBean;
+	private final int processorCount;
+	
+	private volatile boolean paused;
+	
+	private double maxTilesPerSecond;
+	private double tileTokens;
+	
+	private volatile double maxCpuUsage;
+	private double cpuBudget;
+	
+	private RenderLoadSignal loadSignal;
+	private double maxLoad;
+	
+	private long lastRefill;
+	
+	public RenderThrottle() {
+		this.lock = new ReentrantLock();
+		this.changed = lock.newCondition();
+		
+		this.threadBean = ManagementFactory.getThreadMXBean();
+		this.processorCount = Runtime.getRuntime().availableProcessors();
+		
+		this.paused = false;
+		this.maxTilesPerSecond = 0;
+		this.maxCpuUsage = 0;
+		this.loadSignal = null;
+		this.maxLoad = 1;
+		
+		this.lastRefill = System.nanoTime();
+	}
+	
+	/**
+	 * Blocks until a render-thread is allowed to render the next tile
+	 */
+	public void acquire() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			long waitTime;
+			while ((waitTime = getWaitTime()) > 0) {
+				if (waitTime == Long.MAX_VALUE) changed.await();
+				else changed.awaitNanos(waitTime);
+			}
+			
+			if (maxTilesPerSecond > 0) tileTokens -= 1;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Called by a render-thread before it starts rendering a tile.
+	 * 
+	 * @return a value that has to be passed to {@link #finishTile(long)} after the tile is rendered
+	 */
+	public long startTile() {
+		if (maxCpuUsage <= 0) return -1;
+		return threadBean.getCurrentThreadCpuTime();
+	}
+	
+	/**
+	 * Called by a render-thread after it rendered a tile
+	 */
+	public void finishTile(long startValue) {
+		if (startValue < 0) return;
+		
+		long cpuTime = threadBean.getCurrentThreadCpuTime() - startValue;
+		if (cpuTime <= 0) return;
+		
+		lock.lock();
+		try {
+			refill();
+			cpuBudget -= cpuTime;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns how many nanoseconds a render-thread needs to wait until it is allowed to render, 0 if it is allowed right now
+	 */
+	private long getWaitTime() {
+		if (paused) return Long.MAX_VALUE;
+		
+		refill();
+		long waitTime = 0;
+		
+		if (maxTilesPerSecond > 0 && tileTokens < 1) {
+			waitTime = Math.max(waitTime, (long) Math.ceil((1 - tileTokens) / maxTilesPerSecond * SECOND));
+		}
+		
+		if (maxCpuUsage > 0 && cpuBudget < 0) {
+			waitTime = Math.max(waitTime, (long) Math.ceil(-cpuBudget / (maxCpuUsage * processorCount)));
+		}
+		
+		if (loadSignal != null && loadSignal.getLoad() >= maxLoad) {
+			waitTime = Math.max(waitTime, LOAD_RECHECK_INTERVAL);
+		}
+		
+		return waitTime;
+	}
+	
+	private void refill() {
+		long now = System.nanoTime();
+		long elapsed = now - lastRefill;
+		lastRefill = now;
+		
+		if (maxTilesPerSecond > 0) {
+			tileTokens = Math.min(Math.max(maxTilesPerSecond, 1), tileTokens + elapsed * maxTilesPerSecond / SECOND);
+		}
+		
+		if (maxCpuUsage > 0) {
+			double maxBudget = maxCpuUsage * processorCount * SECOND;
+			cpuBudget = Math.min(maxBudget, cpuBudget + elapsed * maxCpuUsage * processorCount);
+		}
+	}
+	
+	/**
+	 * Pauses or resumes rendering
+	 */
+	public void setPaused(boolean paused) {
+		lock.lock();
+		try {
+			this.paused = paused;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public boolean isPaused() {
+		return paused;
+	}
+	
+	/**
+	 * Limits the number of tiles that are rendered per second by all render-threads together.<br>
+	 * A value of 0 or less disables this limit.
+	 */
+	public void setMaxTilesPerSecond(double maxTilesPerSecond) {
+		lock.lock();
+		try {
+			refill();
+			this.maxTilesPerSecond = maxTilesPerSecond;
+			this.tileTokens = Math.max(maxTilesPerSecond, 1);
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public double getMaxTilesPerSecond() {
+		return maxTilesPerSecond;
+	}
+	
+	/**
+	 * Limits the cpu-time that is used by all render-threads together to the given fraction (0 - 1) of all available processors.<br>
+	 * A value of 0 or less disables this limit.
+	 * 
+	 * @throws UnsupportedOperationException if the JVM does not support measuring the cpu-time of threads
+	 */
+	public void setMaxCpuUsage(double maxCpuUsage) {
+		if (maxCpuUsage > 0) {
+			if (!threadBean.isCurrentThreadCpuTimeSupported()) throw new UnsupportedOperationException("This JVM does not support measuring the cpu-time of threads!");
+			if (!threadBean.isThreadCpuTimeEnabled()) threadBean.setThreadCpuTimeEnabled(true);
+		}
+		
+		lock.lock();
+		try {
+			refill();
+			this.maxCpuUsage = maxCpuUsage;
+			this.cpuBudget = 0;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public double getMaxCpuUsage() {
+		return maxCpuUsage;
+	}
+	
+	/**
+	 * Sets a load-signal, no tiles will be rendered while the signal reports a load that is equal or above the max-load.<br>
+	 * The signal is re-checked at least every 250ms while the render-threads are waiting, call {@link #signalLoadChanged()} to wake them up immediately.<br>
+	 * Set the signal to null to disable this limit.
+	 */
+	public void setLoadSignal(RenderLoadSignal loadSignal, double maxLoad) {
+		lock.lock();
+		try {
+			this.loadSignal = loadSignal;
+			this.maxLoad = maxLoad;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public RenderLoadSignal getLoadSignal() {
+		return loadSignal;
+	}
+	
+	public double getMaxLoad() {
+		return maxLoad;
+	}
+	
+	/**
+	 * Returns the current load of the load-signal relative to the max-load, or 0 if there is no load-signal
+	 */
+	public double getLoadRatio() {
+		RenderLoadSignal loadSignal;
+		double maxLoad;
+		
+		lock.lock();
+		try {
+			loadSignal = this.loadSignal;
+			maxLoad = this.maxLoad;
+		} finally {
+			lock.unlock();
+		}
+		
+		if (loadSignal == null) return 0;
+		return loadSignal.getLoad() / maxLoad;
+	}
+	
+	/**
+	 * Wakes up all waiting render-threads to check the load-signal again
+	 */
+	public void signalLoadChanged() {
+		lock.lock();
+		try {
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+}
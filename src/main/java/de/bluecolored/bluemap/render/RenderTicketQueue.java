@@ -0,0 +1,616 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.flowpowered.math.vector.Vector3i;
+
+import de.bluecolored.bluemap.api.World;
+import de.bluecolored.bluemap.render.RenderManager.RenderTicket;
+
+/**
+ * A blocking queue of render-tickets that is ordered by the {@link RenderPriority} of the tickets and a {@link TilePriorityFunction}.<br>
+ * <br>
+ * <i>
+ * Implementation note:<br>
+ * The tickets are grouped into regions of 512x512 blocks and the regions are ranked in a heap, a ticket is then picked from the best region.<br>
+ * The tickets of a region are kept sorted by their rank, so picking the best ticket does not need to evaluate the priority-function.
+ * Only a changed priority-function re-ranks the regions and their tickets.<br>
+ * <br>
+ * Each render-thread takes its tickets through a {@link Worker} that claims a whole region and keeps rendering tiles of that region,
+ * so the world-data that neighbouring tiles share stays hot in the caches of that thread.
+ * An idle worker claims the best region that is not yet claimed by another worker. 
+ * Only if all regions with pending tickets of the highest pending priority-class are claimed, workers share a region of that class.<br>
+ * <br>
+ * Additionally all pending tickets are indexed, so a tile that is scheduled again while it is still pending is only queued once.<br>
+ * <br>
+ * Removing all tickets of a world or an area only visits the regions of that world or area, 
+ * so large amounts of stale tickets can be dropped without rebuilding the whole queue.
+ * </i>
+ */
+class RenderTicketQueue {
+	
+	private static final int REGION_SIZE = 512; //blocks
+	
+	private final ReentrantLock lock;
+	private final Condition notEmpty;
+	
+	private Map<RenderPriority, PriorityClass> priorityClasses;
+	private Map<RenderTicket, RenderTicket> pendingTickets;
+	
+	private TilePriorityFunction priorityFunction;
+	private long rankedRevision;
+	private long nextRegionSequence;
+	private long nextTicketSequence;
+	
+	public RenderTicketQueue(TilePriorityFunction priorityFunction) {
+		this.lock = new ReentrantLock();
+		this.notEmpty = lock.newCondition();
+		
+		this.priorityClasses = new EnumMap<>(RenderPriority.class);
+		for (RenderPriority priority : RenderPriority.values()) {
+			priorityClasses.put(priority, new PriorityClass());
+		}
+		
+		this.pendingTickets = new HashMap<>();
+		
+		this.priorityFunction = priorityFunction;
+		this.rankedRevision = priorityFunction.getRevision();
+		this.nextRegionSequence = 0;
+		this.nextTicketSequence = 0;
+	}
+	
+	/**
+	 * Adds a ticket to this queue, if no equal ticket (same tile and renderer) is already pending.<br>
+	 * If there is already an equal ticket pending with a lower priority, that ticket is moved up to the priority of the new ticket.
+	 * 
+	 * @return the already pending ticket, or null if the given ticket has been added
+	 */
+	public RenderTicket addIfAbsent(RenderTicket ticket) {
+		lock.lock();
+		try {
+			RenderTicket pending = pendingTickets.get(ticket);
+			
+			if (pending != null) {
+				if (ticket.getPriority().compareTo(pending.getPriority()) < 0) {
+					priorityClasses.get(pending.getPriority()).remove(pending);
+					pending.setPriority(ticket.getPriority());
+					priorityClasses.get(pending.getPriority()).add(pending);
+				}
+				
+				return pending;
+			}
+			
+			pendingTickets.put(ticket, ticket);
+			priorityClasses.get(ticket.getPriority()).add(ticket);
+			notEmpty.signal();
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the pending ticket that is equal to the given ticket (same tile and renderer), or null if there is none
+	 */
+	public RenderTicket getPending(RenderTicket ticket) {
+		lock.lock();
+		try {
+			return pendingTickets.get(ticket);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Removes exactly the given ticket from this queue, if it is still pending
+	 * 
+	 * @return true if the ticket has been removed
+	 */
+	public boolean remove(RenderTicket ticket) {
+		lock.lock();
+		try {
+			if (pendingTickets.get(ticket) != ticket) return false;
+			
+			pendingTickets.remove(ticket);
+			priorityClasses.get(ticket.getPriority()).remove(ticket);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Removes all tickets of the given world from this queue and adds them to the given collection
+	 */
+	public void removeWorld(UUID world, Collection<? super RenderTicket> removed) {
+		removeIf(key -> key.world.equals(world), null, removed);
+	}
+	
+	/**
+	 * Removes all tickets of the given tile-renderer from this queue and adds them to the given collection
+	 */
+	public void removeRenderer(TileRenderer renderer, Collection<? super RenderTicket> removed) {
+		removeIf(key -> key.renderer.equals(renderer), null, removed);
+	}
+	
+	/**
+	 * Removes all tickets of the given world from this queue whose tile has its center-block in the area between min and max (inclusive, x and z block-coordinates),
+	 * and adds them to the given collection
+	 */
+	public void removeArea(UUID world, Vector2i min, Vector2i max, Collection<? super RenderTicket> removed) {
+		removeIf(
+				key -> 
+					key.world.equals(world) &&
+					key.x >= Math.floorDiv(min.getX(), REGION_SIZE) && key.x <= Math.floorDiv(max.getX(), REGION_SIZE) &&
+					key.z >= Math.floorDiv(min.getY(), REGION_SIZE) && key.z <= Math.floorDiv(max.getY(), REGION_SIZE),
+				ticket -> {
+					Vector2i center = getCenterBlock(ticket);
+					return 
+							center.getX() >= min.getX() && center.getX() <= max.getX() &&
+							center.getY() >= min.getY() && center.getY() <= max.getY();
+				},
+				removed
+			);
+	}
+	
+	/**
+	 * Removes all tickets of the regions matching the regionFilter (and the ticketFilter, if it is not null)
+	 */
+	private void removeIf(Predicate<RegionKey> regionFilter, Predicate<RenderTicket> ticketFilter, Collection<? super RenderTicket> removed) {
+		lock.lock();
+		try {
+			for (PriorityClass priorityClass : priorityClasses.values()) {
+				priorityClass.removeIf(regionFilter, ticketFilter, removed);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Creates a new worker to take tickets from this queue.<br>
+	 * Each render-thread should use its own worker.
+	 */
+	public Worker createWorker() {
+		return new Worker();
+	}
+	
+	/**
+	 * Removes all tickets from this queue and adds them to the given collection
+	 */
+	public void drainTo(Collection<? super RenderTicket> collection) {
+		lock.lock();
+		try {
+			for (PriorityClass priorityClass : priorityClasses.values()) {
+				priorityClass.drainTo(collection);
+			}
+			pendingTickets.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public int size() {
+		lock.lock();
+		try {
+			return pendingTickets.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public TilePriorityFunction getPriorityFunction() {
+		return priorityFunction;
+	}
+	
+	/**
+	 * Sets the priority-function and re-ranks all pending tickets
+	 */
+	public void setPriorityFunction(TilePriorityFunction priorityFunction) {
+		lock.lock();
+		try {
+			this.priorityFunction = priorityFunction;
+			rerank();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private void rerank() {
+		rankedRevision = priorityFunction.getRevision();
+		for (PriorityClass priorityClass : priorityClasses.values()) {
+			priorityClass.rerank();
+		}
+	}
+	
+	/**
+	 * Returns the x and z coordinates of the block in the center of the ticket's tile
+	 */
+	static Vector2i getCenterBlock(RenderTicket ticket) {
+		Vector2i tile = ticket.getTile().getTile();
+		Vector2i tileSize = ticket.getTileRenderer().getHiresModelManager().getTileSize();
+		Vector2i gridOrigin = ticket.getTileRenderer().getHiresModelManager().getGridOrigin();
+		return new Vector2i(
+				tile.getX() * tileSize.getX() + tileSize.getX() / 2 + gridOrigin.getX(), 
+				tile.getY() * tileSize.getY() + tileSize.getY() / 2 + gridOrigin.getY()
+			);
+	}
+	
+	/**
+	 * Takes tickets from the queue on behalf of one render-thread, preferring tickets from the region it has claimed
+	 */
+	class Worker {
+		
+		private Region region;
+		
+		private Worker() {
+			this.region = null;
+		}
+		
+		/**
+		 * Removes and returns the ticket that this worker should render next, waiting if necessary until a ticket becomes available
+		 */
+		public RenderTicket take() throws InterruptedException {
+			lock.lockInterruptibly();
+			try {
+				while (pendingTickets.isEmpty()) notEmpty.await();
+				
+				if (priorityFunction.getRevision() != rankedRevision) rerank();
+				
+				Region region = selectRegion();
+				RenderTicket ticket = region.poll();
+				region.priorityClass.ticketCount--;
+				pendingTickets.remove(ticket);
+				
+				return ticket;
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * Releases the region that is claimed by this worker, so it can be claimed by other workers
+		 */
+		public void release() {
+			lock.lock();
+			try {
+				releaseRegion();
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		private Region selectRegion() {
+			for (PriorityClass priorityClass : priorityClasses.values()) {
+				if (priorityClass.ticketCount == 0) continue;
+				
+				//stay on the claimed region
+				if (region != null && region.priorityClass == priorityClass && !region.tickets.isEmpty()) return region;
+				
+				//claim the best unclaimed region
+				Region best = priorityClass.ranking.peek();
+				
+				//all regions of this class with tickets are claimed by other workers, so share the best of them,
+				//a lower class is only rendered if there are no tickets of a higher class left
+				if (best == null) {
+					for (Region claimed : priorityClass.claimedRegions) {
+						if (claimed.tickets.isEmpty()) continue;
+						if (best == null || claimed.compareTo(best) < 0) best = claimed;
+					}
+				}
+				
+				if (best != null) {
+					claimRegion(best);
+					return best;
+				}
+			}
+			
+			throw new IllegalStateException("There are pending tickets that are not in any region!");
+		}
+		
+		private void claimRegion(Region newRegion) {
+			releaseRegion();
+			
+			if (newRegion.claims == 0) {
+				newRegion.priorityClass.ranking.remove(newRegion);
+				newRegion.priorityClass.claimedRegions.add(newRegion);
+			}
+			
+			newRegion.claims++;
+			region = newRegion;
+		}
+		
+		private void releaseRegion() {
+			if (region == null) return;
+			
+			region.claims--;
+			if (region.claims == 0) {
+				PriorityClass priorityClass = region.priorityClass;
+				priorityClass.claimedRegions.remove(region);
+				
+				if (region.tickets.isEmpty()) priorityClass.regions.remove(region.key, region);
+				else priorityClass.ranking.add(region);
+			}
+			
+			region = null;
+		}
+		
+	}
+	
+	private class PriorityClass {
+		
+		private Map<RegionKey, Region> regions;
+		private PriorityQueue<Region> ranking; //only contains unclaimed regions
+		private Set<Region> claimedRegions;
+		private int ticketCount;
+		
+		public PriorityClass() {
+			this.regions = new HashMap<>();
+			this.ranking = new PriorityQueue<>(Region::compareTo);
+			this.claimedRegions = new HashSet<>();
+			this.ticketCount = 0;
+		}
+		
+		public void add(RenderTicket ticket) {
+			RegionKey key = new RegionKey(ticket);
+			Region region = regions.get(key);
+			
+			if (region == null) {
+				region = new Region(this, key, ticket.getTile().getWorld(), ticket.getTileRenderer());
+				region.rank();
+				regions.put(key, region);
+				ranking.add(region);
+			}
+			
+			region.add(ticket);
+			ticketCount++;
+		}
+		
+		public void remove(RenderTicket ticket) {
+			Region region = regions.get(new RegionKey(ticket));
+			if (region == null || !region.remove(ticket)) return;
+			
+			ticketCount--;
+			
+			//claimed regions are removed when they get released
+			if (region.tickets.isEmpty() && region.claims == 0) {
+				ranking.remove(region);
+				regions.remove(region.key);
+			}
+		}
+		
+		public void removeIf(Predicate<RegionKey> regionFilter, Predicate<RenderTicket> ticketFilter, Collection<? super RenderTicket> removed) {
+			boolean regionsEmptied = false;
+			
+			for (Region region : regions.values()) {
+				if (!regionFilter.test(region.key)) continue;
+				
+				Iterator<RankedTicket> iterator = region.tickets.values().iterator();
+				while (iterator.hasNext()) {
+					RankedTicket rankedTicket = iterator.next();
+					RenderTicket ticket = rankedTicket.ticket;
+					if (ticketFilter != null && !ticketFilter.test(ticket)) continue;
+					
+					iterator.remove();
+					region.ranking.remove(rankedTicket);
+					pendingTickets.remove(ticket);
+					removed.add(ticket);
+					ticketCount--;
+				}
+				
+				if (region.tickets.isEmpty()) regionsEmptied = true;
+			}
+			
+			//drop all emptied regions at once instead of removing them one by one from the heap, claimed regions are removed when they get released
+			if (regionsEmptied) {
+				ranking.removeIf(region -> region.tickets.isEmpty());
+				regions.values().removeIf(region -> region.tickets.isEmpty() && region.claims == 0);
+			}
+		}
+		
+		public void drainTo(Collection<? super RenderTicket> collection) {
+			for (Region region : regions.values()) {
+				collection.addAll(region.tickets.keySet());
+				region.tickets.clear();
+				region.ranking.clear();
+			}
+			
+			regions.clear();
+			ranking.clear();
+			claimedRegions.clear();
+			ticketCount = 0;
+		}
+		
+		public void rerank() {
+			for (Region region : regions.values()) {
+				region.rank();
+			}
+			
+			ranking.clear();
+			for (Region region : regions.values()) {
+				if (region.claims == 0) ranking.add(region);
+			}
+		}
+		
+	}
+	
+	private class Region implements Comparable<Region> {
+		
+		private final PriorityClass priorityClass;
+		private final RegionKey key;
+		private final WorldTile center;
+		private final TileRenderer renderer;
+		private final long sequence;
+		
+		private Map<RenderTicket, RankedTicket> tickets;
+		private TreeSet<RankedTicket> ranking;
+		private double priority;
+		private int claims;
+		
+		public Region(PriorityClass priorityClass, RegionKey key, World world, TileRenderer renderer) {
+			this.priorityClass = priorityClass;
+			this.key = key;
+			this.center = new WorldTile(world, renderer.getHiresModelManager().posToTile(new Vector3i(
+					key.x * REGION_SIZE + REGION_SIZE / 2, 
+					0,
+					key.z * REGION_SIZE + REGION_SIZE / 2
+				)));
+			this.renderer = renderer;
+			this.sequence = nextRegionSequence++;
+			
+			this.tickets = new LinkedHashMap<>();
+			this.ranking = new TreeSet<>(RankedTicket::compareTo);
+			this.claims = 0;
+		}
+		
+		/**
+		 * Ranks this region and all its tickets with the current priority-function
+		 */
+		public void rank() {
+			priority = priorityFunction.getPriority(center, renderer);
+			
+			ranking.clear();
+			for (RankedTicket rankedTicket : tickets.values()) {
+				rankedTicket.priority = priorityFunction.getPriority(rankedTicket.ticket.getTile(), renderer);
+				ranking.add(rankedTicket);
+			}
+		}
+		
+		public void add(RenderTicket ticket) {
+			RankedTicket rankedTicket = new RankedTicket(ticket, priorityFunction.getPriority(ticket.getTile(), renderer), nextTicketSequence++);
+			tickets.put(ticket, rankedTicket);
+			ranking.add(rankedTicket);
+		}
+		
+		/**
+		 * Removes the ticket from this region
+		 * 
+		 * @return true if the ticket has been in this region
+		 */
+		public boolean remove(RenderTicket ticket) {
+			RankedTicket rankedTicket = tickets.remove(ticket);
+			if (rankedTicket == null) return false;
+			
+			ranking.remove(rankedTicket);
+			return true;
+		}
+		
+		/**
+		 * Removes and returns the ticket with the best priority, or the oldest one if they are all ranked equally
+		 */
+		public RenderTicket poll() {
+			RankedTicket best = ranking.pollFirst();
+			tickets.remove(best.ticket);
+			return best.ticket;
+		}
+		
+		@Override
+		public int compareTo(Region other) {
+			int c = Double.compare(this.priority, other.priority);
+			if (c != 0) return c;
+			return Long.compare(this.sequence, other.sequence);
+		}
+		
+	}
+	
+	/**
+	 * A ticket with the priority it had when its region was ranked the last time
+	 */
+	private static class RankedTicket implements Comparable<RankedTicket> {
+		
+		private final RenderTicket ticket;
+		private final long sequence;
+		private double priority;
+		
+		public RankedTicket(RenderTicket ticket, double priority, long sequence) {
+			this.ticket = ticket;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+		
+		@Override
+		public int compareTo(RankedTicket other) {
+			int c = Double.compare(this.priority, other.priority);
+			if (c != 0) return c;
+			return Long.compare(this.sequence, other.sequence);
+		}
+		
+	}
+	
+	private static class RegionKey {
+		
+		private final TileRenderer renderer;
+		private final UUID world;
+		private final int x, z;
+		
+		private final int hash;
+		
+		public RegionKey(RenderTicket ticket) {
+			this.renderer = ticket.getTileRenderer();
+			this.world = ticket.getTile().getWorld().getUUID();
+			
+			//use the block in the center of the tile to find the region
+			Vector2i center = getCenterBlock(ticket);
+			this.x = Math.floorDiv(center.getX(), REGION_SIZE);
+			this.z = Math.floorDiv(center.getY(), REGION_SIZE);
+			
+			this.hash = Objects.hash(renderer, world, x, z);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RegionKey)) return false;
+			RegionKey that = (RegionKey) obj;
+			
+			if (this.x != that.x || this.z != that.z) return false;
+			if (!this.world.equals(that.world)) return false;
+			return this.renderer.equals(that.renderer);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+/**
+ * Ranks the tiles inside the same {@link RenderPriority}-class.<br>
+ * Tiles with a <b>lower</b> value are rendered first.
+ */
+@FunctionalInterface
+public interface TilePriorityFunction {
+
+	double getPriority(WorldTile tile, TileRenderer renderer);
+	
+	/**
+	 * Returns a number that changes whenever the values returned by {@link #getPriority} might have changed.<br>
+	 * The render-queue re-ranks its pending tickets when it notices a new revision, so a function with changing values has to override this method.
+	 */
+	default long getRevision() {
+		return 0;
+	}
+	
+	/**
+	 * A function that ranks all tiles equally, so they are rendered in the order they have been scheduled
+	 */
+	static TilePriorityFunction fifo() {
+		return (tile, renderer) -> 0;
+	}
+	
+}
@@ -25,8 +25,19 @@
 package de.bluecolored.bluemap.render;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.flowpowered.math.vector.Vector2i;
 
 import de.bluecolored.bluemap.api.ChunkNotGeneratedException;
+import de.bluecolored.bluemap.render.RenderManager.RenderTicket;
 import de.bluecolored.bluemap.render.hires.HiresModel;
 import de.bluecolored.bluemap.render.hires.HiresModelManager;
 import de.bluecolored.bluemap.render.lowres.LowresModelManager;
@@ -36,10 +47,24 @@ public class TileRenderer {
 	private LowresModelManager lowresModelManager;
 	private RenderSettings renderSettings;
 	
+	private volatile boolean skipUnchangedTiles;
+	private volatile long fingerprintSeed;
+	private Map<Vector2i, PendingFingerprint> pendingFingerprints;
+	private Map<Vector2i, Future<Boolean>> pendingSaves;
+	
+	private volatile RenderQueueJournal journal;
+	
 	public TileRenderer(HiresModelManager hiresModelManager, LowresModelManager lowresModelManager, RenderSettings renderSettings) {
 		this.hiresModelManager = hiresModelManager;
 		this.lowresModelManager = lowresModelManager;
 		this.renderSettings = renderSettings.copy();
+		
+		this.skipUnchangedTiles = false;
+		this.fingerprintSeed = 0;
+		this.pendingFingerprints = new ConcurrentHashMap<>();
+		this.pendingSaves = new ConcurrentHashMap<>();
+		
+		this.journal = null;
 	}
 	
 	/**
@@ -48,15 +73,138 @@ public TileRenderer(HiresModelManager hiresModelManager, LowresModelManager lowr
 	 * @throws IOException if a lowres-model that needs to be updated could not be loaded
 	 */
 	public void render(WorldTile tile) throws IOException, ChunkNotGeneratedException {
-		HiresModel hiresModel = hiresModelManager.render(tile, renderSettings);
+		long start = System.nanoTime();
+		
+		if (!skipUnchangedTiles) {
+			HiresModel hiresModel = hiresModelManager.renderWithoutSaving(tile, renderSettings);
+			pendingSaves.put(tile.getTile(), hiresModelManager.save(hiresModel, renderSettings));
+			
+			long lowresStart = System.nanoTime();
+			lowresModelManager.render(hiresModel);
+			long end = RenderMetrics.LOWRES_UPDATE.observeSince(lowresStart);
+			
+			RenderMetrics.TILE.observe(end - start);
+			return;
+		}
+		
+		Vector2i tilePos = tile.getTile();
+		long fingerprint = hiresModelManager.computeFingerprint(tile, renderSettings, fingerprintSeed);
+		RenderMetrics.FINGERPRINT.observeSince(start);
+		
+		//a fingerprint that is not yet saved is newer than the one on disk, unless the models could not be saved
+		PendingFingerprint pending = pendingFingerprints.get(tilePos);
+		if (pending != null && pending.isFailed()) {
+			pendingFingerprints.remove(tilePos, pending);
+			pending = null;
+		}
+		
+		boolean unchanged = pending != null ? pending.fingerprint == fingerprint : hiresModelManager.isFingerprintMatching(tilePos, fingerprint, renderSettings);
+		if (unchanged) {
+			RenderMetrics.UNCHANGED_TILES.increment();
+			RenderMetrics.TILE.observeSince(start);
+			return;
+		}
+		
+		//the saved fingerprint will not match the models anymore
+		if (pending == null) hiresModelManager.deleteFingerprint(tilePos);
+		
+		HiresModel hiresModel = hiresModelManager.renderWithoutSaving(tile, renderSettings);
+		Future<Boolean> saved = hiresModelManager.save(hiresModel, renderSettings);
+		pendingSaves.put(tilePos, saved);
+		
+		long lowresStart = System.nanoTime();
 		lowresModelManager.render(hiresModel);
+		long end = RenderMetrics.LOWRES_UPDATE.observeSince(lowresStart);
+		
+		pendingFingerprints.put(tilePos, new PendingFingerprint(fingerprint, saved));
+		
+		RenderMetrics.TILE.observe(end - start);
 	}
 	
 	/**
 	 * Saves changes to disk
 	 */
 	public void save(){
+		//tiles that have been rendered until now have their lowres-changes saved below
+		RenderQueueJournal journal = this.journal;
+		List<RenderTicket> completedTickets = journal != null ? journal.takeCompleted() : Collections.emptyList();
+		
+		//only tiles whose hires-model is saved and whose lowres-changes are saved below can be skipped after a restart
+		Map<Vector2i, PendingFingerprint> savedFingerprints = new HashMap<>();
+		for (Map.Entry<Vector2i, PendingFingerprint> entry : pendingFingerprints.entrySet()) {
+			if (entry.getValue().saved.isDone()) savedFingerprints.put(entry.getKey(), entry.getValue());
+		}
+		
 		lowresModelManager.save();
+		
+		//only tiles whose hires-model is saved as well are done in the journal, tiles whose hires-model is still being saved are checked again with the next save
+		//and tiles whose hires-model failed to save stay scheduled, so they are rendered again after a restart
+		if (journal != null) {
+			List<RenderTicket> doneTickets = new ArrayList<>(completedTickets.size());
+			for (RenderTicket ticket : completedTickets) {
+				Future<Boolean> saved = pendingSaves.get(ticket.getTile().getTile());
+				if (saved != null && !saved.isDone()) journal.done(ticket);
+				else if (saved == null || isSuccessful(saved)) doneTickets.add(ticket);
+			}
+			journal.commitDone(doneTickets);
+		}
+		
+		//failed saves are kept, until the tile is rendered again
+		for (Map.Entry<Vector2i, Future<Boolean>> entry : pendingSaves.entrySet()) {
+			if (entry.getValue().isDone() && isSuccessful(entry.getValue())) pendingSaves.remove(entry.getKey(), entry.getValue());
+		}
+		
+		for (Map.Entry<Vector2i, PendingFingerprint> entry : savedFingerprints.entrySet()) {
+			PendingFingerprint pending = entry.getValue();
+			
+			try {
+				if (pending.saved.get()) hiresModelManager.saveFingerprint(entry.getKey(), pending.fingerprint);
+			} catch (IOException | ExecutionException ex) {
+				//without the fingerprint the tile is just rendered again
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			
+			pendingFingerprints.remove(entry.getKey(), pending);
+		}
+	}
+	
+	/**
+	 * Returns true if the (completed) saving of a hires-model has been successful
+	 */
+	private static boolean isSuccessful(Future<Boolean> saved) {
+		try {
+			return saved.get();
+		} catch (ExecutionException ex) {
+			return false;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * Sets the journal whose completed tickets are recorded as done when this renderer is saved, see {@link RenderManager#attachJournal(RenderQueueJournal, java.util.function.Function)}
+	 */
+	void setJournal(RenderQueueJournal journal) {
+		this.journal = journal;
+	}
+	
+	/**
+	 * Enables or disables skipping tiles whose blocks did not change since they have been rendered the last time.<br>
+	 * For this a fingerprint of the blocks is saved next to each hires-tile.<br>
+	 * <br>
+	 * The seed is mixed into all fingerprints, change it when anything else that the models depend on changes (e.g. use a hash of the resource-pack),
+	 * so all tiles are rendered again.
+	 */
+	public void setSkipUnchangedTiles(boolean skipUnchangedTiles, long fingerprintSeed) {
+		this.fingerprintSeed = fingerprintSeed;
+		this.skipUnchangedTiles = skipUnchangedTiles;
+	}
+	
+	public boolean isSkipUnchangedTiles() {
+		return skipUnchangedTiles;
 	}
 	
 	public HiresModelManager getHiresModelManager() {
@@ -71,4 +219,23 @@ public RenderSettings getRenderSettings() {
 		return renderSettings;
 	}
 	
+	private static class PendingFingerprint {
+		
+		private final long fingerprint;
+		private final Future<Boolean> saved;
+		
+		public PendingFingerprint(long fingerprint, Future<Boolean> saved) {
+			this.fingerprint = fingerprint;
+			this.saved = saved;
+		}
+		
+		/**
+		 * Returns true if saving the models of the tile has finished without success
+		 */
+		public boolean isFailed() {
+			return saved.isDone() && !isSuccessful(saved);
+		}
+		
+	}
+	
 }
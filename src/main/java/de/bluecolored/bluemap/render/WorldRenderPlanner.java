@@ -0,0 +1,350 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.flowpowered.math.vector.Vector2i;
+
+import de.bluecolored.bluemap.api.World;
+import de.bluecolored.bluemap.render.RenderManager.RenderTicket;
+import de.bluecolored.bluemap.render.hires.HiresModelManager;
+import de.bluecolored.bluemap.util.AABB;
+
+/**
+ * Renders all tiles within the boundaries of a world.<br>
+ * <br>
+ * The tiles are scheduled in the order of a hilbert-curve, so consecutive tiles are always neighbours and share their chunks.
+ * Only a limited amount of tiles is scheduled at once, the next tiles are scheduled when the scheduled tiles are done.
+ * This way the memory needed stays the same, no matter how large the world is.<br>
+ * <br>
+ * <i>
+ * Implementation note:<br>
+ * The rectangle of tiles is split into squares along its longer side, with a width and height of the smallest power of two that fits its shorter side. 
+ * The hilbert-curve of each square starts in one corner and ends in the neighbouring corner, 
+ * so the curves of consecutive squares connect. Positions of the last square that are outside of the rectangle are skipped.
+ * </i>
+ */
+public class WorldRenderPlanner {
+	
+	private static final long RATE_SAMPLE_TIME = 1000; //ms
+	private static final double RATE_SMOOTHING = 0.3;
+	
+	private final RenderManager renderManager;
+	private final World world;
+	private final TileRenderer renderer;
+	private final RenderPriority priority;
+	private final int maxScheduledTiles;
+	
+	private final HilbertTileIterator tileIterator;
+	private final long totalTiles;
+	
+	private Set<RenderTicket> scheduledTickets;
+	private long completedTiles;
+	private long failedTiles;
+	private boolean started;
+	private boolean cancelled;
+	
+	private long startTime;
+	private long lastSampleTime;
+	private long lastSampleCompletedTiles;
+	private double tilesPerSecond;
+	
+	/**
+	 * Creates a planner that renders all tiles of the world with the priority {@link RenderPriority#BULK} and schedules at most 1000 tiles at once
+	 */
+	public WorldRenderPlanner(RenderManager renderManager, World world, TileRenderer renderer) {
+		this(renderManager, world, renderer, RenderPriority.BULK, 1000);
+	}
+	
+	/**
+	 * Creates a planner that renders all tiles of the world with the given priority
+	 * 
+	 * @param maxScheduledTiles the maximum number of tiles that are scheduled at the same time
+	 */
+	public WorldRenderPlanner(RenderManager renderManager, World world, TileRenderer renderer, RenderPriority priority, int maxScheduledTiles) {
+		if (maxScheduledTiles <= 0) throw new IllegalArgumentException("maxScheduledTiles has to be greater than 0!");
+		
+		this.renderManager = renderManager;
+		this.world = world;
+		this.renderer = renderer;
+		this.priority = priority;
+		this.maxScheduledTiles = maxScheduledTiles;
+		
+		HiresModelManager hiresModelManager = renderer.getHiresModelManager();
+		AABB boundaries = world.getBoundaries();
+		Vector2i minTile = hiresModelManager.posToTile(boundaries.getMin());
+		Vector2i maxTile = hiresModelManager.posToTile(boundaries.getMax());
+		
+		this.tileIterator = new HilbertTileIterator(minTile, maxTile);
+		this.totalTiles = (long) (maxTile.getX() - minTile.getX() + 1) * (long) (maxTile.getY() - minTile.getY() + 1);
+		
+		this.scheduledTickets = new HashSet<>();
+		this.completedTiles = 0;
+		this.failedTiles = 0;
+		this.started = false;
+		this.cancelled = false;
+		
+		this.tilesPerSecond = 0;
+	}
+	
+	/**
+	 * Starts scheduling the tiles.<br>
+	 * This method can only be invoked once
+	 */
+	public synchronized void start() {
+		if (started) throw new IllegalStateException("The planner has already been started!");
+		started = true;
+		
+		startTime = System.currentTimeMillis();
+		lastSampleTime = startTime;
+		lastSampleCompletedTiles = 0;
+		
+		scheduleNextTiles();
+	}
+	
+	/**
+	 * Stops scheduling new tiles and cancels the tiles that are scheduled but not yet rendered.
+	 */
+	public void cancel() {
+		Set<RenderTicket> ticketsToCancel;
+		synchronized (this) {
+			if (cancelled) return;
+			cancelled = true;
+			
+			ticketsToCancel = new HashSet<>(scheduledTickets);
+		}
+		
+		for (RenderTicket ticket : ticketsToCancel) {
+			ticket.cancel();
+		}
+	}
+	
+	private void scheduleNextTiles() {
+		while (!cancelled && scheduledTickets.size() < maxScheduledTiles && tileIterator.hasNext()) {
+			RenderTicket ticket = renderManager.scheduleRender(new WorldTile(world, tileIterator.next()), renderer, priority);
+			scheduledTickets.add(ticket);
+			ticket.addListener(this::onTicketDone);
+		}
+	}
+	
+	private synchronized void onTicketDone(RenderTicket ticket) {
+		if (!scheduledTickets.remove(ticket)) return;
+		
+		completedTiles++;
+		if (!ticket.isCancelled() && ticket.getFuture().isCompletedExceptionally()) failedTiles++;
+		
+		sampleRate();
+		scheduleNextTiles();
+	}
+	
+	private void sampleRate() {
+		long now = System.currentTimeMillis();
+		long sampleTime = now - lastSampleTime;
+		if (sampleTime < RATE_SAMPLE_TIME) return;
+		
+		double sampleRate = (completedTiles - lastSampleCompletedTiles) * 1000d / sampleTime;
+		if (lastSampleCompletedTiles == 0) tilesPerSecond = sampleRate;
+		else tilesPerSecond = tilesPerSecond * (1 - RATE_SMOOTHING) + sampleRate * RATE_SMOOTHING;
+		
+		lastSampleTime = now;
+		lastSampleCompletedTiles = completedTiles;
+	}
+	
+	/**
+	 * Returns the number of tiles that are done, including the tiles that failed to render
+	 */
+	public synchronized long getCompletedTiles() {
+		return completedTiles;
+	}
+	
+	/**
+	 * Returns the number of tiles that failed to render, e.g. because their chunks are not generated
+	 */
+	public synchronized long getFailedTiles() {
+		return failedTiles;
+	}
+	
+	/**
+	 * Returns the number of tiles in the boundaries of the world
+	 */
+	public long getTotalTiles() {
+		return totalTiles;
+	}
+	
+	/**
+	 * Returns the progress as a value between 0 and 1
+	 */
+	public synchronized double getProgress() {
+		if (totalTiles == 0) return 1;
+		return (double) completedTiles / totalTiles;
+	}
+	
+	/**
+	 * Returns the current rate of completed tiles per second, or 0 if it is not yet known
+	 */
+	public synchronized double getTilesPerSecond() {
+		//before the first sample, use the average since the start
+		if (lastSampleCompletedTiles == 0 && started) {
+			long time = System.currentTimeMillis() - startTime;
+			if (time <= 0) return 0;
+			return completedTiles * 1000d / time;
+		}
+		
+		return tilesPerSecond;
+	}
+	
+	/**
+	 * Returns the estimated time in milliseconds until all tiles are done, or -1 if it can not be estimated yet
+	 */
+	public synchronized long getEstimatedRemainingTime() {
+		if (isDone()) return 0;
+		
+		double tilesPerSecond = getTilesPerSecond();
+		if (tilesPerSecond <= 0) return -1;
+		
+		return (long) ((totalTiles - completedTiles) * 1000d / tilesPerSecond);
+	}
+	
+	/**
+	 * Returns true if all tiles are done, or the planner has been cancelled and all its scheduled tiles are done
+	 */
+	public synchronized boolean isDone() {
+		if (!started) return false;
+		return scheduledTickets.isEmpty() && (cancelled || !tileIterator.hasNext());
+	}
+	
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * Returns the tickets that are currently scheduled by this planner
+	 */
+	public synchronized Set<RenderTicket> getScheduledTickets() {
+		return Collections.unmodifiableSet(new HashSet<>(scheduledTickets));
+	}
+	
+	public World getWorld() {
+		return world;
+	}
+	
+	public TileRenderer getTileRenderer() {
+		return renderer;
+	}
+	
+	/**
+	 * Iterates over all tiles in a rectangle (min and max inclusive) in the order of connected hilbert-curves
+	 */
+	private static class HilbertTileIterator {
+		
+		private final Vector2i min;
+		private final int width, height;
+		private final boolean swapAxes;
+		private final int order; //the width and height of each hilbert-square
+		private final long squareSize;
+		
+		private int square;
+		private long index;
+		private Vector2i next;
+		
+		public HilbertTileIterator(Vector2i min, Vector2i max) {
+			this.min = min;
+			
+			int sizeX = max.getX() - min.getX() + 1;
+			int sizeZ = max.getY() - min.getY() + 1;
+			
+			//the squares are lined up along the first axis
+			this.swapAxes = sizeZ > sizeX;
+			this.width = swapAxes ? sizeZ : sizeX;
+			this.height = swapAxes ? sizeX : sizeZ;
+			
+			int order = 1;
+			while (order < height) order <<= 1;
+			this.order = order;
+			this.squareSize = (long) order * order;
+			
+			this.square = 0;
+			this.index = 0;
+			this.next = width > 0 && height > 0 ? findNext() : null;
+		}
+		
+		public boolean hasNext() {
+			return next != null;
+		}
+		
+		public Vector2i next() {
+			Vector2i current = next;
+			next = findNext();
+			return current;
+		}
+		
+		private Vector2i findNext() {
+			while ((long) square * order < width) {
+				while (index < squareSize) {
+					long d = index++;
+					
+					//convert the distance on the hilbert-curve to the position in the square
+					int x = 0, y = 0;
+					for (int s = 1; s < order; s <<= 1) {
+						int rx = (int) ((d >>> 1) & 1);
+						int ry = (int) ((d ^ rx) & 1);
+						
+						if (ry == 0) {
+							if (rx == 1) {
+								x = s - 1 - x;
+								y = s - 1 - y;
+							}
+							
+							int t = x;
+							x = y;
+							y = t;
+						}
+						
+						x += s * rx;
+						y += s * ry;
+						d >>>= 2;
+					}
+					
+					//the curve runs from (0, 0) to (order - 1, 0), so the next square continues next to it
+					x += square * order;
+					if (x >= width || y >= height) continue;
+					
+					if (swapAxes) return min.add(y, x);
+					return min.add(x, y);
+				}
+				
+				square++;
+				index = 0;
+			}
+			
+			return null;
+		}
+		
+	}
+	
+}
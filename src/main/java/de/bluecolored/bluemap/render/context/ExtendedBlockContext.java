@@ -26,7 +26,9 @@
 
 import com.flowpowered.math.vector.Vector3i;
 
+import de.bluecolored.bluemap.api.BiomeRegistry;
 import de.bluecolored.bluemap.api.Block;
+import de.bluecolored.bluemap.api.BlockState;
 
 /**
  * A BlockContext that has a range of TWO blocks instead of one
@@ -47,6 +49,73 @@ default Block getRelativeBlock(int x, int y, int z){
 		return getRelativeBlock(new Vector3i(x, y, z));
 	}
 	
+	/**
+	 * Returns the block-state of a neighbour block.<br>
+	 * The distance can not be larger than two blocks in each direction!<br>
+	 * <br>
+	 * <i>(The implementation should override this and the other primitive getters if it can read them without creating {@link Block}s)</i><br>
+	 */
+	default BlockState getRelativeBlockState(int x, int y, int z){
+		return getRelativeBlock(x, y, z).getBlockState();
+	}
+	
+	/**
+	 * Returns the sun-light level of a neighbour block.<br>
+	 * The distance can not be larger than two blocks in each direction!<br>
+	 */
+	default double getRelativeSunLightLevel(int x, int y, int z){
+		return getRelativeBlock(x, y, z).getSunLightLevel();
+	}
+	
+	/**
+	 * Returns the block-light level of a neighbour block.<br>
+	 * The distance can not be larger than two blocks in each direction!<br>
+	 */
+	default double getRelativeBlockLightLevel(int x, int y, int z){
+		return getRelativeBlock(x, y, z).getBlockLightLevel();
+	}
+	
+	/**
+	 * Returns the biome-id (see {@link BiomeRegistry}) of a neighbour block.<br>
+	 * The distance can not be larger than two blocks in each direction!<br>
+	 */
+	default int getRelativeBiomeId(int x, int y, int z){
+		return BiomeRegistry.getBiomeId(getRelativeBlock(x, y, z).getBiome());
+	}
+	
+	/**
+	 * Returns true if a neighbour block is culling the faces of its neighbours.<br>
+	 * The distance can not be larger than two blocks in each direction!<br>
+	 */
+	default boolean isRelativeCullingNeighborFaces(int x, int y, int z){
+		return getRelativeBlock(x, y, z).isCullingNeighborFaces();
+	}
+	
+	/**
+	 * Returns true if a neighbour block is occluding the faces of its neighbours.<br>
+	 * The distance can not be larger than two blocks in each direction!<br>
+	 */
+	default boolean isRelativeOccludingNeighborFaces(int x, int y, int z){
+		return getRelativeBlock(x, y, z).isOccludingNeighborFaces();
+	}
+	
+	/**
+	 * Returns a bitmask of the 27 blocks in the 3x3x3 cube around (and including) this block, that are occluding the faces of their neighbours.<br>
+	 * The block on the relative position (x, y, z) (each from -1 to 1) is the bit <code>(x + 1) * 9 + (z + 1) * 3 + (y + 1)</code>.
+	 */
+	default int getOccludingNeighbourMask(){
+		int mask = 0;
+		for (int x = -1; x <= 1; x++) {
+			for (int z = -1; z <= 1; z++) {
+				for (int y = -1; y <= 1; y++) {
+					if (isRelativeOccludingNeighborFaces(x, y, z)) mask |= 1 << ((x + 1) * 9 + (z + 1) * 3 + (y + 1));
+				}
+			}
+		}
+		
+		return mask;
+	}
+	
 	/**
 	 * Returns a relative view of this ExtendedBlockContext!
 	 * The distance can not be larger than two blocks in each direction!<br>
@@ -0,0 +1,223 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render.context;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import de.bluecolored.bluemap.api.Block;
+import de.bluecolored.bluemap.api.BlockState;
+import de.bluecolored.bluemap.api.ChunkNotGeneratedException;
+import de.bluecolored.bluemap.api.WorldChunk;
+
+/**
+ * A reusable BlockContext backed by a WorldChunk, that can be moved to another block-position with {@link #moveTo(int, int, int)}.<br>
+ * <br>
+ * The blocks are cached in a 5x5x5 ring-buffer (every block-position maps to one slot, by its coordinates modulo 5).
+ * So the whole extended neighbourhood of the current position fits into the buffer, and when the context slides along a column (or to the next column), 
+ * all blocks that are still in the neighbourhood are reused and only the new blocks are fetched from the world-chunk.<br>
+ * Accessing a block does not allocate any objects.<br>
+ * If the world-chunk is a {@link TileSnapshot}, the primitive getters (e.g. {@link #getRelativeBlockState(int, int, int)}) are read directly from the snapshot.<br>
+ * <br>
+ * This Context assumes that the world-chunk is generated around the block-positions it is moved to.
+ * If the given world chunk is not generated, using this context will result in a RuntimeException!<br>
+ * <br>
+ * <i>This class is not thread-save, every render-thread needs its own instance.</i>
+ */
+public class SlidingBlockContext implements ExtendedBlockContext {
+	
+	private static final int SIZE = 5;
+	private static final int VIEW_RANGE = 1;
+	private static final int VIEW_SIZE = VIEW_RANGE * 2 + 1;
+	
+	private final WorldChunk chunk;
+	private final TileSnapshot snapshot;
+	
+	private final Block[] blocks;
+	private final long[] blockKeys;
+	
+	private final RelativeView[] views;
+	
+	private int x, y, z;
+	private Vector3i position;
+	
+	public SlidingBlockContext(WorldChunk worldChunk) {
+		this.chunk = worldChunk;
+		this.snapshot = worldChunk instanceof TileSnapshot ? (TileSnapshot) worldChunk : null;
+		
+		this.blocks = new Block[SIZE * SIZE * SIZE];
+		this.blockKeys = new long[SIZE * SIZE * SIZE];
+		
+		this.views = new RelativeView[VIEW_SIZE * VIEW_SIZE * VIEW_SIZE];
+		
+		this.x = 0;
+		this.y = 0;
+		this.z = 0;
+		this.position = null;
+	}
+	
+	/**
+	 * Moves this context to the given block-position
+	 */
+	public void moveTo(int x, int y, int z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.position = null;
+	}
+	
+	@Override
+	public Vector3i getPosition() {
+		if (position == null) position = new Vector3i(x, y, z);
+		return position;
+	}
+	
+	@Override
+	public Block getRelativeBlock(Vector3i direction) {
+		return getGeneratedBlock(x + direction.getX(), y + direction.getY(), z + direction.getZ());
+	}
+	
+	@Override
+	public Block getRelativeBlock(int x, int y, int z) {
+		return getGeneratedBlock(this.x + x, this.y + y, this.z + z);
+	}
+	
+	@Override
+	public BlockState getRelativeBlockState(int x, int y, int z) {
+		if (snapshot == null) return ExtendedBlockContext.super.getRelativeBlockState(x, y, z);
+		return snapshot.getBlockState(this.x + x, this.y + y, this.z + z);
+	}
+	
+	@Override
+	public double getRelativeSunLightLevel(int x, int y, int z) {
+		if (snapshot == null) return ExtendedBlockContext.super.getRelativeSunLightLevel(x, y, z);
+		return snapshot.getSunLight(this.x + x, this.y + y, this.z + z);
+	}
+	
+	@Override
+	public double getRelativeBlockLightLevel(int x, int y, int z) {
+		if (snapshot == null) return ExtendedBlockContext.super.getRelativeBlockLightLevel(x, y, z);
+		return snapshot.getBlockLight(this.x + x, this.y + y, this.z + z);
+	}
+	
+	@Override
+	public int getRelativeBiomeId(int x, int y, int z) {
+		if (snapshot == null) return ExtendedBlockContext.super.getRelativeBiomeId(x, y, z);
+		return snapshot.getBiomeId(this.x + x, this.y + y, this.z + z);
+	}
+	
+	@Override
+	public boolean isRelativeCullingNeighborFaces(int x, int y, int z) {
+		if (snapshot == null) return ExtendedBlockContext.super.isRelativeCullingNeighborFaces(x, y, z);
+		return snapshot.isCullingNeighborFaces(this.x + x, this.y + y, this.z + z);
+	}
+	
+	@Override
+	public boolean isRelativeOccludingNeighborFaces(int x, int y, int z) {
+		if (snapshot == null) return ExtendedBlockContext.super.isRelativeOccludingNeighborFaces(x, y, z);
+		return snapshot.isOccludingNeighborFaces(this.x + x, this.y + y, this.z + z);
+	}
+	
+	@Override
+	public int getOccludingNeighbourMask() {
+		if (snapshot == null) return ExtendedBlockContext.super.getOccludingNeighbourMask();
+		return snapshot.getOccludingNeighbourMask(x, y, z);
+	}
+	
+	private Block getGeneratedBlock(int x, int y, int z) {
+		try {
+			return getBlock(x, y, z);
+		} catch (ChunkNotGeneratedException e) {
+			//we assume the chunk being generated
+			throw new RuntimeException(e); 
+		}
+	}
+	
+	/**
+	 * Returns the block at the given (absolute) position, using the cached block if it is still in the buffer
+	 */
+	public Block getBlock(int x, int y, int z) throws ChunkNotGeneratedException {
+		int index = (Math.floorMod(x, SIZE) * SIZE + Math.floorMod(y, SIZE)) * SIZE + Math.floorMod(z, SIZE);
+		long key = toKey(x, y, z);
+		
+		Block block = blocks[index];
+		if (block != null && blockKeys[index] == key) return block;
+		
+		block = chunk.getBlock(x, y, z);
+		
+		blocks[index] = block;
+		blockKeys[index] = key;
+		return block;
+	}
+	
+	private static long toKey(int x, int y, int z) {
+		return (x & 0x3FFFFFFL) << 38 | (z & 0x3FFFFFFL) << 12 | (y & 0xFFFL);
+	}
+	
+	@Override
+	public BlockContext getRelativeView(Vector3i relative) {
+		int rx = relative.getX(), ry = relative.getY(), rz = relative.getZ();
+		if (Math.abs(rx) > VIEW_RANGE || Math.abs(ry) > VIEW_RANGE || Math.abs(rz) > VIEW_RANGE) return ExtendedBlockContext.super.getRelativeView(relative);
+		
+		int index = ((rx + VIEW_RANGE) * VIEW_SIZE + (ry + VIEW_RANGE)) * VIEW_SIZE + (rz + VIEW_RANGE);
+		RelativeView view = views[index];
+		if (view == null) {
+			view = new RelativeView(rx, ry, rz);
+			views[index] = view;
+		}
+		
+		return view;
+	}
+	
+	/**
+	 * A view with a fixed offset to the current position of this context, it moves with the context
+	 */
+	private class RelativeView implements BlockContext {
+		
+		private final int rx, ry, rz;
+		
+		public RelativeView(int rx, int ry, int rz) {
+			this.rx = rx;
+			this.ry = ry;
+			this.rz = rz;
+		}
+		
+		@Override
+		public Vector3i getPosition() {
+			return new Vector3i(x + rx, y + ry, z + rz);
+		}
+		
+		@Override
+		public Block getRelativeBlock(Vector3i direction) {
+			return getGeneratedBlock(x + rx + direction.getX(), y + ry + direction.getY(), z + rz + direction.getZ());
+		}
+		
+		@Override
+		public Block getRelativeBlock(int x, int y, int z) {
+			return getGeneratedBlock(SlidingBlockContext.this.x + rx + x, SlidingBlockContext.this.y + ry + y, SlidingBlockContext.this.z + rz + z);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,369 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render.context;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import de.bluecolored.bluemap.api.BiomeRegistry;
+import de.bluecolored.bluemap.api.Block;
+import de.bluecolored.bluemap.api.BlockState;
+import de.bluecolored.bluemap.api.BlockStateRegistry;
+import de.bluecolored.bluemap.api.ChunkNotGeneratedException;
+import de.bluecolored.bluemap.api.World;
+import de.bluecolored.bluemap.api.WorldChunk;
+import de.bluecolored.bluemap.util.AABB;
+
+/**
+ * A dense copy of all blocks in a box of a WorldChunk, that is read once when a tile is rendered.<br>
+ * For every block the snapshot stores the palette-id of its block-state, its sun- and block-light (packed into one byte),
+ * its biome-id and if it is culling/occluding neighbour-faces in flat arrays, so the renderer can read them without any object-allocations or virtual calls.<br>
+ * Additionally the occluding-flags are stored as a bit-column for every x/z, so the occluding neighbours of a block can be read as a bitmask 
+ * (see {@link #getOccludingNeighbourMask(int, int, int)}) with one read per neighbour-column.<br>
+ * <br>
+ * Blocks outside of the box are read from the backing WorldChunk on every access.
+ * Since this snapshot is also a WorldChunk itself, it can be used for everything else that needs {@link Block}s.<br>
+ * <br>
+ * <i>The snapshot is not changed after it is created, so it is thread-save.</i>
+ */
+public class TileSnapshot implements WorldChunk {
+	
+	private static final int FLAG_CULLING = 1;
+	private static final int FLAG_OCCLUDING = 2;
+	
+	private final WorldChunk chunk;
+	private final World world;
+	
+	private final int minX, minY, minZ;
+	private final int sizeX, sizeY, sizeZ;
+	
+	private final int[] paletteIds;
+	private final byte[] light;
+	private final short[] biomeIds;
+	private final byte[] flags;
+	private final int columnLength; //longs per column
+	private final long[] occludingColumns; //(x * sizeZ + z) * columnLength, one bit per y
+	
+	private TileSnapshot(WorldChunk chunk, Vector3i min, Vector3i max) {
+		this.chunk = chunk;
+		this.world = chunk.getWorld();
+		
+		this.minX = min.getX();
+		this.minY = min.getY();
+		this.minZ = min.getZ();
+		this.sizeX = Math.max(max.getX() - minX + 1, 0);
+		this.sizeY = Math.max(max.getY() - minY + 1, 0);
+		this.sizeZ = Math.max(max.getZ() - minZ + 1, 0);
+		
+		int size = sizeX * sizeY * sizeZ;
+		this.paletteIds = new int[size];
+		this.light = new byte[size];
+		this.biomeIds = new short[size];
+		this.flags = new byte[size];
+		
+		this.columnLength = (sizeY + 63) >> 6;
+		this.occludingColumns = new long[sizeX * sizeZ * columnLength];
+	}
+	
+	/**
+	 * Reads all blocks in the box from min to max (inclusive) from the world-chunk into a new snapshot.<br>
+	 * To not read all the air above the terrain, the box is cut off one block above the highest block of all its columns (see {@link WorldChunk#getHighestBlockY(int, int)}).
+	 *
+	 * @throws ChunkNotGeneratedException if a minecraft-chunk needed for this snapshot is not yet generated
+	 */
+	public static TileSnapshot create(WorldChunk chunk, Vector3i min, Vector3i max) throws ChunkNotGeneratedException {
+		int highestY = min.getY() - 1;
+		for (int x = min.getX(); x <= max.getX(); x++) {
+			for (int z = min.getZ(); z <= max.getZ(); z++) {
+				highestY = Math.max(highestY, chunk.getHighestBlockY(x, z));
+			}
+		}
+		
+		TileSnapshot snapshot = new TileSnapshot(chunk, min, new Vector3i(max.getX(), Math.min(max.getY(), highestY + 1), max.getZ()));
+		snapshot.read();
+		return snapshot;
+	}
+	
+	private void read() throws ChunkNotGeneratedException {
+		for (int x = 0; x < sizeX; x++) {
+			for (int z = 0; z < sizeZ; z++) {
+				for (int y = 0; y < sizeY; y++) {
+					int index = (x * sizeZ + z) * sizeY + y;
+					Block block = chunk.getBlock(minX + x, minY + y, minZ + z);
+					
+					paletteIds[index] = BlockStateRegistry.getPaletteId(block.getBlockState());
+					light[index] = (byte) (toNibble(block.getSunLightLevel()) << 4 | toNibble(block.getBlockLightLevel()));
+					biomeIds[index] = (short) BiomeRegistry.getBiomeId(block.getBiome());
+					flags[index] = (byte) ((block.isCullingNeighborFaces() ? FLAG_CULLING : 0) | (block.isOccludingNeighborFaces() ? FLAG_OCCLUDING : 0));
+					
+					if (block.isOccludingNeighborFaces()) occludingColumns[(x * sizeZ + z) * columnLength + (y >> 6)] |= 1L << (y & 63);
+				}
+			}
+		}
+	}
+	
+	private static int toNibble(double lightLevel) {
+		return (int) Math.round(Math.min(Math.max(lightLevel, 0), 15));
+	}
+	
+	/**
+	 * Returns the index of the block in the arrays, or -1 if the block is not in the snapshot
+	 */
+	private int getIndex(int x, int y, int z) {
+		x -= minX;
+		y -= minY;
+		z -= minZ;
+		
+		if (x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ) return -1;
+		return (x * sizeZ + z) * sizeY + y;
+	}
+	
+	/**
+	 * Returns the min-position of the box that is stored in this snapshot
+	 */
+	public Vector3i getMin() {
+		return new Vector3i(minX, minY, minZ);
+	}
+	
+	/**
+	 * Returns the max-position (inclusive) of the box that is stored in this snapshot
+	 */
+	public Vector3i getMax() {
+		return new Vector3i(minX + sizeX - 1, minY + sizeY - 1, minZ + sizeZ - 1);
+	}
+	
+	/**
+	 * Returns true if the block on this position is stored in this snapshot
+	 */
+	public boolean isInSnapshot(int x, int y, int z) {
+		return getIndex(x, y, z) >= 0;
+	}
+	
+	/**
+	 * Returns the palette-id (see {@link BlockStateRegistry}) of the block-state on this position
+	 */
+	public int getPaletteId(int x, int y, int z) {
+		int index = getIndex(x, y, z);
+		if (index < 0) return BlockStateRegistry.getPaletteId(getChunkBlock(x, y, z).getBlockState());
+		return paletteIds[index];
+	}
+	
+	/**
+	 * Returns the block-state on this position
+	 */
+	public BlockState getBlockState(int x, int y, int z) {
+		return BlockStateRegistry.getState(getPaletteId(x, y, z));
+	}
+	
+	/**
+	 * Returns the sun-light level (0 - 15) on this position
+	 */
+	public int getSunLight(int x, int y, int z) {
+		int index = getIndex(x, y, z);
+		if (index < 0) return toNibble(getChunkBlock(x, y, z).getSunLightLevel());
+		return (light[index] >> 4) & 0xF;
+	}
+	
+	/**
+	 * Returns the block-light level (0 - 15) on this position
+	 */
+	public int getBlockLight(int x, int y, int z) {
+		int index = getIndex(x, y, z);
+		if (index < 0) return toNibble(getChunkBlock(x, y, z).getBlockLightLevel());
+		return light[index] & 0xF;
+	}
+	
+	/**
+	 * Returns the biome-id (see {@link BiomeRegistry}) on this position
+	 */
+	public int getBiomeId(int x, int y, int z) {
+		int index = getIndex(x, y, z);
+		if (index < 0) return BiomeRegistry.getBiomeId(getChunkBlock(x, y, z).getBiome());
+		return biomeIds[index];
+	}
+	
+	/**
+	 * Returns true if the block on this position is culling the faces of its neighbours, see {@link Block#isCullingNeighborFaces()}
+	 */
+	public boolean isCullingNeighborFaces(int x, int y, int z) {
+		int index = getIndex(x, y, z);
+		if (index < 0) return getChunkBlock(x, y, z).isCullingNeighborFaces();
+		return (flags[index] & FLAG_CULLING) != 0;
+	}
+	
+	/**
+	 * Returns true if the block on this position is occluding the faces of its neighbours, see {@link Block#isOccludingNeighborFaces()}
+	 */
+	public boolean isOccludingNeighborFaces(int x, int y, int z) {
+		int index = getIndex(x, y, z);
+		if (index < 0) return getChunkBlock(x, y, z).isOccludingNeighborFaces();
+		return (flags[index] & FLAG_OCCLUDING) != 0;
+	}
+	
+	/**
+	 * Returns a bitmask of the 27 blocks in the 3x3x3 cube around (and including) the block on this position, that are occluding the faces of their neighbours.<br>
+	 * The layout of the bits is the same as in {@link ExtendedBlockContext#getOccludingNeighbourMask()}.
+	 */
+	public int getOccludingNeighbourMask(int x, int y, int z) {
+		int rx = x - minX;
+		int ry = y - minY;
+		int rz = z - minZ;
+		
+		//slow path if the cube is not completely in the snapshot
+		if (rx < 1 || rx >= sizeX - 1 || ry < 1 || ry >= sizeY - 1 || rz < 1 || rz >= sizeZ - 1) {
+			int mask = 0;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dz = -1; dz <= 1; dz++) {
+					for (int dy = -1; dy <= 1; dy++) {
+						if (isOccludingNeighborFaces(x + dx, y + dy, z + dz)) mask |= 1 << ((dx + 1) * 9 + (dz + 1) * 3 + (dy + 1));
+					}
+				}
+			}
+			
+			return mask;
+		}
+		
+		//the three bits (y - 1, y, y + 1) of each of the 9 columns
+		int bit = ry - 1;
+		int word = bit >> 6;
+		int shift = bit & 63;
+		
+		int mask = 0;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dz = -1; dz <= 1; dz++) {
+				int column = ((rx + dx) * sizeZ + (rz + dz)) * columnLength + word;
+				long bits = occludingColumns[column] >>> shift;
+				if (shift > 61) bits |= occludingColumns[column + 1] << (64 - shift);
+				
+				mask |= ((int) bits & 7) << ((dx + 1) * 9 + (dz + 1) * 3);
+			}
+		}
+		
+		return mask;
+	}
+	
+	private Block getChunkBlock(int x, int y, int z) {
+		try {
+			return chunk.getBlock(x, y, z);
+		} catch (ChunkNotGeneratedException e) {
+			//we assume the chunk being generated
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public World getWorld() {
+		return world;
+	}
+	
+	@Override
+	public Block getBlock(Vector3i pos) throws ChunkNotGeneratedException {
+		return getBlock(pos.getX(), pos.getY(), pos.getZ());
+	}
+	
+	@Override
+	public Block getBlock(int x, int y, int z) throws ChunkNotGeneratedException {
+		int index = getIndex(x, y, z);
+		if (index < 0) return chunk.getBlock(x, y, z);
+		return new SnapshotBlock(index, x, y, z);
+	}
+	
+	@Override
+	public int getHighestBlockY(int x, int z) throws ChunkNotGeneratedException {
+		return chunk.getHighestBlockY(x, z);
+	}
+	
+	@Override
+	public AABB getBoundaries() {
+		return chunk.getBoundaries();
+	}
+	
+	@Override
+	public WorldChunk getWorldChunk(AABB boundaries) {
+		return chunk.getWorldChunk(boundaries);
+	}
+	
+	@Override
+	public boolean isGenerated() {
+		return chunk.isGenerated();
+	}
+	
+	/**
+	 * A block that reads all its values from the arrays of this snapshot
+	 */
+	private class SnapshotBlock extends Block {
+		
+		private final int index;
+		private final int x, y, z;
+		
+		public SnapshotBlock(int index, int x, int y, int z) {
+			this.index = index;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+		
+		@Override
+		public BlockState getBlockState() {
+			return BlockStateRegistry.getState(paletteIds[index]);
+		}
+		
+		@Override
+		public World getWorld() {
+			return world;
+		}
+		
+		@Override
+		public Vector3i getPosition() {
+			return new Vector3i(x, y, z);
+		}
+		
+		@Override
+		public double getSunLightLevel() {
+			return (light[index] >> 4) & 0xF;
+		}
+		
+		@Override
+		public double getBlockLightLevel() {
+			return light[index] & 0xF;
+		}
+		
+		@Override
+		public boolean isCullingNeighborFaces() {
+			return (flags[index] & FLAG_CULLING) != 0;
+		}
+		
+		@Override
+		public boolean isOccludingNeighborFaces() {
+			return (flags[index] & FLAG_OCCLUDING) != 0;
+		}
+		
+		@Override
+		public String getBiome() {
+			return BiomeRegistry.getBiome(biomeIds[index]);
+		}
+		
+	}
+	
+}
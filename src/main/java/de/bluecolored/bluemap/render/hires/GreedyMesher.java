@@ -0,0 +1,301 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render.hires;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.flowpowered.math.vector.Vector2f;
+import com.flowpowered.math.vector.Vector3f;
+
+import de.bluecolored.bluemap.model.Face;
+import de.bluecolored.bluemap.model.Model;
+
+/**
+ * Merges adjacent coplanar quads of a model into larger quads.<br>
+ * <br>
+ * Only quads that cover exactly one block-face (a 1x1 square on the block-grid) with the full texture are merged, 
+ * and only with quads of the same material, normal, color and texture-orientation. 
+ * The texture of a merged quad is repeated once per block using uv-coordinates outside of 0 - 1, 
+ * this relies on the textures being rendered with repeat-wrapping.<br>
+ * A quad is recognized as two consecutive triangles (c0, c1, c2) and (c0, c2, c3), like they are created by the model-builders.<br>
+ * <br>
+ * <i>
+ * Implementation note:<br>
+ * The quads are grouped by plane and all other properties, and each group is merged with the greedy-meshing algorithm: 
+ * Starting at the lowest free cell, a quad is extended as far as possible along the first axis and then along the second axis.
+ * </i>
+ */
+class GreedyMesher {
+	
+	private GreedyMesher() {}
+	
+	/**
+	 * Replaces all mergeable quads of the model with merged quads
+	 */
+	public static void mesh(Model model) {
+		Collection<Face> faces = model.getFaces();
+		List<Face> faceList = new ArrayList<>(faces);
+		
+		List<Face> kept = new ArrayList<>(faceList.size());
+		Map<QuadType, Set<Long>> groups = new HashMap<>();
+		
+		for (int i = 0; i < faceList.size(); i++) {
+			Face f1 = faceList.get(i);
+			Face f2 = i + 1 < faceList.size() ? faceList.get(i + 1) : null;
+			
+			if (f2 != null && addQuad(f1, f2, groups)) {
+				i++;
+				continue;
+			}
+			
+			kept.add(f1);
+		}
+		
+		for (Map.Entry<QuadType, Set<Long>> group : groups.entrySet()) {
+			mergeGroup(group.getKey(), group.getValue(), kept);
+		}
+		
+		faces.clear();
+		faces.addAll(kept);
+	}
+	
+	/**
+	 * Adds the quad made from the two triangles to its group if it can be merged
+	 * 
+	 * @return false if the triangles are not a mergeable quad
+	 */
+	private static boolean addQuad(Face f1, Face f2, Map<QuadType, Set<Long>> groups) {
+		if (f1.getMaterialIndex() != f2.getMaterialIndex()) return false;
+		if (!f1.getP1().equals(f2.getP1()) || !f1.getP3().equals(f2.getP2())) return false;
+		if (!f1.getUv1().equals(f2.getUv1()) || !f1.getUv3().equals(f2.getUv2())) return false;
+		
+		//uniform normal and color
+		Vector3f normal = f1.getN1();
+		if (!normal.equals(f1.getN2()) || !normal.equals(f1.getN3()) || !normal.equals(f2.getN1()) || !normal.equals(f2.getN2()) || !normal.equals(f2.getN3())) return false;
+		
+		Vector3f color = f1.getC1();
+		if (!color.equals(f1.getC2()) || !color.equals(f1.getC3()) || !color.equals(f2.getC1()) || !color.equals(f2.getC2()) || !color.equals(f2.getC3())) return false;
+		
+		Vector3f[] corners = new Vector3f[]{ f1.getP1(), f1.getP2(), f1.getP3(), f2.getP3() };
+		Vector2f[] uvs = new Vector2f[]{ f1.getUv1(), f1.getUv2(), f1.getUv3(), f2.getUv3() };
+		
+		//find the axis the quad is perpendicular to
+		int axis = -1;
+		for (int a = 0; a < 3; a++) {
+			float value = get(corners[0], a);
+			if (value == get(corners[1], a) && value == get(corners[2], a) && value == get(corners[3], a)) {
+				if (axis != -1) return false;
+				axis = a;
+			}
+		}
+		if (axis == -1) return false;
+		
+		int axisA = axis == 0 ? 1 : 0;
+		int axisB = axis == 2 ? 1 : 2;
+		
+		//the quad has to be exactly one cell of the block-grid
+		float minA = Float.POSITIVE_INFINITY, minB = Float.POSITIVE_INFINITY;
+		for (Vector3f c : corners) {
+			minA = Math.min(minA, get(c, axisA));
+			minB = Math.min(minB, get(c, axisB));
+		}
+		if (minA != (int) minA || minB != (int) minB) return false;
+		
+		int pattern = 0;
+		Vector2f[] cellUvs = new Vector2f[4];
+		for (int i = 0; i < 4; i++) {
+			float da = get(corners[i], axisA) - minA;
+			float db = get(corners[i], axisB) - minB;
+			if ((da != 0 && da != 1) || (db != 0 && db != 1)) return false;
+			
+			int cellCorner = (int) da | (int) db << 1;
+			if (cellUvs[cellCorner] != null) return false;
+			cellUvs[cellCorner] = uvs[i];
+			pattern |= cellCorner << (i * 2);
+			
+			//the quad has to show the full texture
+			Vector2f uv = uvs[i];
+			if ((uv.getX() != 0 && uv.getX() != 1) || (uv.getY() != 0 && uv.getY() != 1)) return false;
+		}
+		
+		//the texture has to be mapped linearly so it can be repeated
+		Vector2f uv00 = cellUvs[0], uv10 = cellUvs[1], uv01 = cellUvs[2];
+		if (!cellUvs[3].equals(uv10.add(uv01).sub(uv00))) return false;
+		
+		QuadType type = new QuadType(axis, get(corners[0], axis), f1.getMaterialIndex(), normal, color, pattern, uv00, uv10, uv01);
+		Set<Long> cells = groups.computeIfAbsent(type, t -> new HashSet<>());
+		
+		//keep duplicate quads as they are
+		return cells.add(toCell((int) minA, (int) minB));
+	}
+	
+	private static void mergeGroup(QuadType type, Set<Long> cells, List<Face> faces) {
+		List<Long> sortedCells = new ArrayList<>(cells);
+		sortedCells.sort(null);
+		
+		Set<Long> free = new HashSet<>(cells);
+		for (long cell : sortedCells) {
+			if (!free.contains(cell)) continue;
+			
+			int a = getA(cell);
+			int b = getB(cell);
+			
+			int width = 1;
+			while (free.contains(toCell(a + width, b))) width++;
+			
+			int height = 1;
+			extend: while (true) {
+				for (int i = 0; i < width; i++) {
+					if (!free.contains(toCell(a + i, b + height))) break extend;
+				}
+				height++;
+			}
+			
+			for (int j = 0; j < height; j++) {
+				for (int i = 0; i < width; i++) {
+					free.remove(toCell(a + i, b + j));
+				}
+			}
+			
+			type.createQuad(a, b, width, height, faces);
+		}
+	}
+	
+	private static long toCell(int a, int b) {
+		//sorted by b first, then by a
+		return (long) b << 32 | (a & 0xFFFFFFFFL);
+	}
+	
+	private static int getA(long cell) {
+		return (int) cell;
+	}
+	
+	private static int getB(long cell) {
+		return (int) (cell >> 32);
+	}
+	
+	private static float get(Vector3f v, int axis) {
+		switch (axis) {
+			case 0: return v.getX();
+			case 1: return v.getY();
+			default: return v.getZ();
+		}
+	}
+	
+	private static class QuadType {
+		
+		private final int axis;
+		private final float plane;
+		private final int material;
+		private final Vector3f normal;
+		private final Vector3f color;
+		private final int pattern;
+		private final Vector2f uv00, uv10, uv01;
+		
+		public QuadType(int axis, float plane, int material, Vector3f normal, Vector3f color, int pattern, Vector2f uv00, Vector2f uv10, Vector2f uv01) {
+			this.axis = axis;
+			this.plane = plane;
+			this.material = material;
+			this.normal = normal;
+			this.color = color;
+			this.pattern = pattern;
+			this.uv00 = uv00;
+			this.uv10 = uv10;
+			this.uv01 = uv01;
+		}
+		
+		/**
+		 * Creates the two triangles of a merged quad with the same corner-order as the original quads
+		 */
+		public void createQuad(int a, int b, int width, int height, List<Face> faces) {
+			Vector3f[] corners = new Vector3f[4];
+			Vector2f[] uvs = new Vector2f[4];
+			
+			for (int i = 0; i < 4; i++) {
+				int cellCorner = pattern >> (i * 2) & 3;
+				int da = (cellCorner & 1) * width;
+				int db = (cellCorner >> 1) * height;
+				
+				corners[i] = toPosition(a + da, b + db);
+				uvs[i] = uv00.add(uv10.sub(uv00).mul(da)).add(uv01.sub(uv00).mul(db));
+			}
+			
+			Face f1 = new Face(corners[0], corners[1], corners[2], normal, normal, normal, uvs[0], uvs[1], uvs[2], material);
+			Face f2 = new Face(corners[0], corners[2], corners[3], normal, normal, normal, uvs[0], uvs[2], uvs[3], material);
+			
+			f1.setC1(color); f1.setC2(color); f1.setC3(color);
+			f2.setC1(color); f2.setC2(color); f2.setC3(color);
+			
+			faces.add(f1);
+			faces.add(f2);
+		}
+		
+		private Vector3f toPosition(float a, float b) {
+			switch (axis) {
+				case 0: return new Vector3f(plane, a, b);
+				case 1: return new Vector3f(a, plane, b);
+				default: return new Vector3f(a, b, plane);
+			}
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof QuadType)) return false;
+			QuadType other = (QuadType) obj;
+			return 
+					axis == other.axis && 
+					Float.compare(plane, other.plane) == 0 && 
+					material == other.material && 
+					pattern == other.pattern && 
+					normal.equals(other.normal) && 
+					color.equals(other.color) && 
+					uv00.equals(other.uv00) && 
+					uv10.equals(other.uv10) && 
+					uv01.equals(other.uv01);
+		}
+		
+		@Override
+		public int hashCode() {
+			int hash = axis;
+			hash = hash * 31 + Float.hashCode(plane);
+			hash = hash * 31 + material;
+			hash = hash * 31 + pattern;
+			hash = hash * 31 + normal.hashCode();
+			hash = hash * 31 + color.hashCode();
+			hash = hash * 31 + uv00.hashCode();
+			hash = hash * 31 + uv10.hashCode();
+			hash = hash * 31 + uv01.hashCode();
+			return hash;
+		}
+		
+	}
+	
+}
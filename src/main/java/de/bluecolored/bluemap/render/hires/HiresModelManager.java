@@ -24,14 +24,19 @@
  */
 package de.bluecolored.bluemap.render.hires;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPOutputStream;
 
 import com.flowpowered.math.vector.Vector2i;
@@ -40,6 +45,7 @@
 
 import de.bluecolored.bluemap.api.ChunkNotGeneratedException;
 import de.bluecolored.bluemap.logger.Logger;
+import de.bluecolored.bluemap.render.RenderMetrics;
 import de.bluecolored.bluemap.render.RenderSettings;
 import de.bluecolored.bluemap.render.WorldTile;
 import de.bluecolored.bluemap.resourcepack.ResourcePack;
@@ -83,36 +89,109 @@ public HiresModelManager(Path fileRoot, HiresModelRenderer renderer, Vector2i ti
 	 */
 	public HiresModel render(WorldTile tile, RenderSettings renderSettings) throws ChunkNotGeneratedException {
 		HiresModel model = renderer.render(tile, getTileRegion(tile), renderSettings);
-		save(model);
+		save(model, renderSettings);
 		return model;
 	}
 	
-	private void save(final HiresModel model) {
+	/**
+	 * Renders the given world tile with the provided render-settings, but does not save the model
+	 * @throws ChunkNotGeneratedException if a minecraft-chunk needed for thies tile is not yet generated
+	 */
+	public HiresModel renderWithoutSaving(WorldTile tile, RenderSettings renderSettings) throws ChunkNotGeneratedException {
+		return renderer.render(tile, getTileRegion(tile), renderSettings);
+	}
+	
+	/**
+	 * Saves the model asynchronously with the saving-executor, 
+	 * and its level-of-detail variant (see {@link #getLodFile(Vector2i)}) if {@link RenderSettings#isSaveHiresLod()} is enabled
+	 * 
+	 * @return a future that completes with true when the model has been saved successfully, or with false if saving failed
+	 */
+	public Future<Boolean> save(final HiresModel model, RenderSettings renderSettings) {
+		long start = System.nanoTime();
 		final String modelJson = model.toBufferGeometry().toJson();
-		savingExecutor.submit(() -> save(model, modelJson));
+		final String lodJson = renderSettings.isSaveHiresLod() ? LodModelBuilder.createHeightfield(model).toBufferGeometry().toJson() : null;
+		RenderMetrics.GEOMETRY_JSON.observeSince(start);
+		
+		return savingExecutor.submit(() -> save(model, modelJson, lodJson));
+	}
+	
+	/**
+	 * Computes the fingerprint of the blocks that the model of a tile depends on, see {@link HiresModelRenderer#computeFingerprint(WorldTile, AABB, RenderSettings, long)}
+	 * @throws ChunkNotGeneratedException if a minecraft-chunk needed for thies tile is not yet generated
+	 */
+	public long computeFingerprint(WorldTile tile, RenderSettings renderSettings, long seed) throws ChunkNotGeneratedException {
+		return renderer.computeFingerprint(tile, getTileRegion(tile), renderSettings, seed);
+	}
+	
+	/**
+	 * Returns true if the fingerprint that is saved for the tile is equal to the given fingerprint 
+	 * (and the level-of-detail variant of the tile exists if it is enabled in the render-settings)
+	 */
+	public boolean isFingerprintMatching(Vector2i tilePos, long fingerprint, RenderSettings renderSettings) {
+		File file = getFingerprintFile(tilePos);
+		if (!file.exists()) return false;
+		
+		//tiles that have been saved while level-of-detail variants were disabled need to be rendered again
+		if (renderSettings.isSaveHiresLod() && !getLodFile(tilePos).exists()) return false;
+		
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			return in.readLong() == fingerprint;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Saves the fingerprint of a tile, this should only be done after the tile's models have been saved
+	 */
+	public void saveFingerprint(Vector2i tilePos, long fingerprint) throws IOException {
+		File file = getFingerprintFile(tilePos);
+		file.getParentFile().mkdirs();
+		
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			out.writeLong(fingerprint);
+		}
 	}
 	
-	private void save(HiresModel model, String modelJson){
+	/**
+	 * Deletes the saved fingerprint of a tile, this should be done before the tile's models are changed
+	 */
+	public void deleteFingerprint(Vector2i tilePos) throws IOException {
+		Files.deleteIfExists(getFingerprintFile(tilePos).toPath());
+	}
+	
+	private boolean save(HiresModel model, String modelJson, String lodJson){
+		long start = System.nanoTime();
 		File file = getFile(model.getTile());
+		File lodFile = getLodFile(model.getTile());
 		
 		try {
-			if (!file.exists()){
-				file.getParentFile().mkdirs();
-				file.createNewFile();
-			}
-	
-			FileOutputStream fos = new FileOutputStream(file);
-			GZIPOutputStream zos = new GZIPOutputStream(fos); 
-			OutputStreamWriter osw = new OutputStreamWriter(zos, StandardCharsets.UTF_8);
-			try (
-				PrintWriter pw = new PrintWriter(osw);
-			){
-				pw.print(modelJson);
-			}
+			save(file, modelJson);
+			if (lodJson != null) save(lodFile, lodJson);
 			
 			//logger.logDebug("Saved hires model: " + model.getTile()); 
 		} catch (IOException e){
 			logger.logError("Failed to save hires model: " + file, e);
+			return false;
+		} finally {
+			RenderMetrics.HIRES_SAVE.observeSince(start);
+		}
+		
+		return true;
+	}
+	
+	private void save(File file, String json) throws IOException {
+		if (!file.exists()){
+			file.getParentFile().mkdirs();
+			file.createNewFile();
+		}
+		
+		//not a PrintWriter, it would swallow the exceptions and a broken file would be reported as saved
+		try (
+			Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8);
+		){
+			writer.write(json);
 		}
 	}
 	
@@ -172,4 +251,18 @@ public File getFile(Vector2i tilePos){
 		return FileUtil.coordsToFile(fileRoot, tilePos, "json.gz");
 	}
 	
+	/**
+	 * Returns the file for the level-of-detail variant of a tile, see {@link LodModelBuilder}
+	 */
+	public File getLodFile(Vector2i tilePos){
+		return FileUtil.coordsToFile(fileRoot, tilePos, "lod.json.gz");
+	}
+	
+	/**
+	 * Returns the file that stores the fingerprint of a tile
+	 */
+	public File getFingerprintFile(Vector2i tilePos){
+		return FileUtil.coordsToFile(fileRoot, tilePos, "fp");
+	}
+	
 }
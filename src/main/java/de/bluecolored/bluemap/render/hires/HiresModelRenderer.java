@@ -24,17 +24,29 @@
  */
 package de.bluecolored.bluemap.render.hires;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.flowpowered.math.vector.Vector3d;
 import com.flowpowered.math.vector.Vector3f;
 import com.flowpowered.math.vector.Vector3i;
 import com.flowpowered.math.vector.Vector4f;
 
 import de.bluecolored.bluemap.api.Block;
+import de.bluecolored.bluemap.api.BlockState;
+import de.bluecolored.bluemap.api.BlockStateRegistry;
 import de.bluecolored.bluemap.api.ChunkNotGeneratedException;
 import de.bluecolored.bluemap.api.WorldChunk;
 import de.bluecolored.bluemap.logger.Logger;
+import de.bluecolored.bluemap.model.Model;
+import de.bluecolored.bluemap.render.RenderMetrics;
 import de.bluecolored.bluemap.render.RenderSettings;
 import de.bluecolored.bluemap.render.WorldTile;
-import de.bluecolored.bluemap.render.context.WorldChunkBlockContext;
+import de.bluecolored.bluemap.render.context.ExtendedBlockContext;
+import de.bluecolored.bluemap.render.context.SlidingBlockContext;
+import de.bluecolored.bluemap.render.context.TileSnapshot;
 import de.bluecolored.bluemap.render.hires.blockmodel.BlockStateModel;
 import de.bluecolored.bluemap.render.hires.blockmodel.BlockStateModelFactory;
 import de.bluecolored.bluemap.resourcepack.InvalidResourceDeclarationException;
@@ -45,6 +57,9 @@
 import de.bluecolored.bluemap.util.MathUtil;
 
 public class HiresModelRenderer {
+	
+	private static final int FINGERPRINT_VERSION = 4; //increase if the rendered models change for the same blocks
+	private static final int SNAPSHOT_MARGIN = 2; //the range of an ExtendedBlockContext, the model of a block depends on all blocks in this range
 
 	private BlockStateModelFactory modelFactory;
 	private Logger logger;
@@ -66,54 +81,289 @@ public HiresModelRenderer(BlockStateModelFactory modelFactory, Logger logger) {
 		this.logger = logger;
 	}
 	
-	public HiresModel render(WorldTile tile, AABB region, RenderSettings renderSettings) throws ChunkNotGeneratedException {
-		Vector3i min = region.getMin().toInt();
-		Vector3i max = region.getMax().toInt();
-		WorldChunk chunk = tile.getWorld().getWorldChunk(region.expand(4, 0, 4));
+	/**
+	 * Computes a fingerprint of everything the model of the tile depends on: the block-states, light-levels and biomes of all blocks in the region 
+	 * and the blocks around it up to the range of an {@link ExtendedBlockContext} (for face-culling, light, ambient-occlusion, liquid-heights and biome-blending), and the render-settings.<br>
+	 * If the fingerprint of a tile did not change, rendering it again would produce the same model.<br>
+	 * <br>
+	 * <i>The resource-pack is not part of the fingerprint, use a different seed if it changed.</i>
+	 */
+	public long computeFingerprint(WorldTile tile, AABB region, RenderSettings renderSettings, long seed) throws ChunkNotGeneratedException {
+		Vector3i regionMin = region.getMin().toInt();
+		Vector3i regionMax = region.getMax().toInt();
+		int boundsMinY = Math.max(regionMin.getY(), renderSettings.getMinY());
+		int boundsMaxY = Math.min(regionMax.getY(), renderSettings.getMaxY());
 		
-		HiresModel model = new HiresModel(tile.getWorld().getUUID(), tile.getTile(), min, max);
+		//light is read from the neighbours of the neighbours, and the sky-visibility of view-constrained culling depends on the whole snapshot
+		int minY = Math.max(regionMin.getY(), boundsMinY - SNAPSHOT_MARGIN);
+		int maxY = Math.min(regionMax.getY(), boundsMaxY + SNAPSHOT_MARGIN);
+		
+		Vector3i min = new Vector3i(regionMin.getX() - SNAPSHOT_MARGIN, minY, regionMin.getZ() - SNAPSHOT_MARGIN);
+		Vector3i max = new Vector3i(regionMax.getX() + SNAPSHOT_MARGIN, maxY, regionMax.getZ() + SNAPSHOT_MARGIN);
+		WorldChunk chunk = tile.getWorld().getWorldChunk(getChunkRegion(region, minY, maxY));
+		
+		long hash = mixFingerprint(seed, FINGERPRINT_VERSION);
+		hash = mixFingerprint(hash, 
+				(renderSettings.isAmbientOcclusion() ? 1 : 0) | 
+				(renderSettings.isLighting() ? 2 : 0) | 
+				(renderSettings.isExcludeFacesWithoutSunlight() ? 4 : 0) |
+				(renderSettings.isSkipOccludedBlocks() ? 8 : 0) |
+				(renderSettings.isGreedyMeshing() ? 16 : 0) |
+				(renderSettings.isViewConstrainedCulling() ? 32 : 0)
+			);
+		
+		//only mixed in if they are set, so the fingerprints of tiles without bounds stay the same
+		if (boundsMinY > regionMin.getY() || boundsMaxY < regionMax.getY() || renderSettings.getSurfaceDepth() > 0) {
+			hash = mixFingerprint(hash, boundsMinY);
+			hash = mixFingerprint(hash, boundsMaxY);
+			hash = mixFingerprint(hash, renderSettings.getSurfaceDepth());
+		}
 		
 		for (int x = min.getX(); x <= max.getX(); x++){
 			for (int z = min.getZ(); z <= max.getZ(); z++){
-
-				int maxHeight = 0;
-				Vector4f color = Vector4f.ZERO;
-				
 				for (int y = min.getY(); y <= max.getY(); y++){
 					Block block = chunk.getBlock(x, y, z);
-					if (block.getBlockState().getResourceId().equals("air")) continue;
-					
-					maxHeight = y;
-
-					BlockStateModel blockModel;
-					try {
-						blockModel = modelFactory.createFrom(block.getBlockState(), new WorldChunkBlockContext(chunk, new Vector3i(x, y, z)), renderSettings);
-					} catch (NoSuchResourceException | InvalidResourceDeclarationException | NoSuchTextureException e) {
-						blockModel = new BlockStateModel();						
-						logger.noFloodWarning("HiresModelRenderer-blockmodelerr-" + block.getBlockState().getResourceId(), "Failed to create BlockModel for BlockState: " + block.getBlockState() + " (" + e.toString() + ")");
-					}
-					
-					blockModel.translate(new Vector3f(x, y, z).sub(min.toFloat()));
-
-					color = MathUtil.overlayColors(blockModel.getMapColor(), color);
-					
-					//TODO: quick hack to random offset grass
-					if (block.getBlockState().getResourceId().equals("tall_grass")){
-						float dx = (MathUtil.hashToFloat(x, y, z, 123984) - 0.5f) * 0.75f;
-						float dz = (MathUtil.hashToFloat(x, y, z, 345542) - 0.5f) * 0.75f;
-						blockModel.translate(new Vector3f(dx, 0, dz));
-					}
 					
-					model.merge(blockModel);
+					hash = mixFingerprint(hash, block.getBlockState().hashCode());
+					hash = mixFingerprint(hash, Double.hashCode(block.getSunLightLevel()));
+					hash = mixFingerprint(hash, Double.hashCode(block.getBlockLightLevel()));
+					hash = mixFingerprint(hash, block.getBiome().hashCode());
 				}
-
-				model.setHeight(x, z, maxHeight);
-				model.setColor(x, z, color);
+			}
+		}
+		
+		return hash;
+	}
+	
+	private static long mixFingerprint(long hash, int value) {
+		hash ^= value * 0x9E3779B97F4A7C15L;
+		hash = Long.rotateLeft(hash, 27);
+		return hash * 0xBF58476D1CE4E5B9L + 0x94D049BB133111EBL;
+	}
+	
+	public HiresModel render(WorldTile tile, AABB region, RenderSettings renderSettings) throws ChunkNotGeneratedException {
+		Vector3i min = region.getMin().toInt();
+		Vector3i max = region.getMax().toInt();
+		
+		//the y-bounds of the rendered blocks, the model keeps the coordinates of the full region
+		int boundsMinY = Math.max(min.getY(), renderSettings.getMinY());
+		int boundsMaxY = Math.min(max.getY(), renderSettings.getMaxY());
+		
+		//the snapshot contains the neighbours of the rendered blocks
+		int snapshotMinY = Math.max(min.getY(), Math.min(boundsMinY, max.getY()) - SNAPSHOT_MARGIN);
+		int snapshotMaxY = Math.min(max.getY(), Math.max(boundsMaxY, min.getY()) + SNAPSHOT_MARGIN);
+		
+		long start = System.nanoTime();
+		WorldChunk chunk = tile.getWorld().getWorldChunk(getChunkRegion(region, snapshotMinY, snapshotMaxY));
+		TileSnapshot snapshot = TileSnapshot.create(chunk, 
+				new Vector3i(min.getX() - SNAPSHOT_MARGIN, snapshotMinY, min.getZ() - SNAPSHOT_MARGIN), 
+				new Vector3i(max.getX() + SNAPSHOT_MARGIN, snapshotMaxY, max.getZ() + SNAPSHOT_MARGIN)
+			);
+		start = RenderMetrics.WORLD_READ.observeSince(start);
+		
+		HiresModel model = new HiresModel(tile.getWorld().getUUID(), tile.getTile(), min, max);
+		
+		//all blocks above the highest block are air, and with a surface-depth only the blocks close to the highest block are rendered
+		int surfaceDepth = renderSettings.getSurfaceDepth();
+		int[][] minY = new int[max.getX() - min.getX() + 1][max.getZ() - min.getZ() + 1];
+		int[][] maxY = new int[max.getX() - min.getX() + 1][max.getZ() - min.getZ() + 1];
+		for (int x = min.getX(); x <= max.getX(); x++){
+			for (int z = min.getZ(); z <= max.getZ(); z++){
+				int columnMaxY = Math.min(boundsMaxY, chunk.getHighestBlockY(x, z));
+				int columnMinY = boundsMinY;
+				if (surfaceDepth > 0) columnMinY = Math.max(columnMinY, getSurfaceY(snapshot, x, z, boundsMinY, columnMaxY) - surfaceDepth);
 				
+				minY[x - min.getX()][z - min.getZ()] = columnMinY;
+				maxY[x - min.getX()][z - min.getZ()] = columnMaxY;
 			}
 		}
 		
+		SkyVisibility visibility = null;
+		if (renderSettings.isViewConstrainedCulling()) visibility = SkyVisibility.compute(snapshot);
+		
+		int stripWidth = renderSettings.getParallelStripWidth();
+		if (stripWidth > 0 && stripWidth < max.getX() - min.getX() + 1) {
+			renderStripsParallel(snapshot, visibility, minY, maxY, stripWidth, min, max, renderSettings, model);
+		} else {
+			renderStrip(snapshot, visibility, minY, maxY, min.getX(), max.getX(), min, max, renderSettings, model, model);
+		}
+		
+		if (renderSettings.isGreedyMeshing()) GreedyMesher.mesh(model);
+		
+		RenderMetrics.HIRES_MODEL.observeSince(start);
+		
 		return model;
 	}
 	
+	/**
+	 * Splits the tile into strips of columns (along the x-axis) and renders them in parallel on the common {@link ForkJoinPool}.<br>
+	 * Each strip is rendered into its own mesh, and the meshes are merged in the order of the strips, so the faces of the model are in the same order as if the tile was rendered in one strip.
+	 */
+	private void renderStripsParallel(TileSnapshot snapshot, SkyVisibility visibility, int[][] minY, int[][] maxY, int stripWidth, Vector3i min, Vector3i max, RenderSettings renderSettings, HiresModel model) {
+		List<ForkJoinTask<Model>> strips = new ArrayList<>();
+		for (int stripMinX = min.getX(); stripMinX <= max.getX(); stripMinX += stripWidth) {
+			int minX = stripMinX;
+			int maxX = Math.min(stripMinX + stripWidth - 1, max.getX());
+			
+			strips.add(ForkJoinTask.adapt(() -> {
+				Model mesh = new Model();
+				renderStrip(snapshot, visibility, minY, maxY, minX, maxX, min, max, renderSettings, model, mesh);
+				return mesh;
+			}));
+		}
+		
+		//runs the first strip on this thread and waits for the others
+		ForkJoinTask.invokeAll(strips);
+		
+		for (ForkJoinTask<Model> strip : strips) {
+			model.merge(strip.join());
+		}
+	}
+	
+	/**
+	 * Renders all columns from minX to maxX (inclusive) of the tile, the faces are added to the given mesh and the heights and colors of the columns are set on the model.<br>
+	 * Every strip uses its own {@link SlidingBlockContext}, so strips can be rendered by different threads.
+	 */
+	private void renderStrip(TileSnapshot snapshot, SkyVisibility visibility, int[][] minY, int[][] maxY, int minX, int maxX, Vector3i min, Vector3i max, RenderSettings renderSettings, HiresModel model, Model mesh) {
+		SlidingBlockContext context = new SlidingBlockContext(snapshot);
+		
+		for (int x = minX; x <= maxX; x++){
+			for (int z = min.getZ(); z <= max.getZ(); z++){
+				int columnMinY = minY[x - min.getX()][z - min.getZ()];
+				int columnMaxY = maxY[x - min.getX()][z - min.getZ()];
+				
+				if (renderSettings.isSkipOccludedBlocks()) {
+					renderColumnTopDown(snapshot, visibility, context, x, z, min, columnMinY, columnMaxY, renderSettings, model, mesh);
+				} else {
+					renderColumn(snapshot, visibility, context, x, z, min, columnMinY, columnMaxY, renderSettings, model, mesh);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Renders all blocks of a column from minY to maxY, from the bottom to the top
+	 */
+	private void renderColumn(TileSnapshot snapshot, SkyVisibility visibility, SlidingBlockContext context, int x, int z, Vector3i min, int minY, int maxY, RenderSettings renderSettings, HiresModel model, Model mesh) {
+		int maxHeight = 0;
+		Vector4f color = Vector4f.ZERO;
+		
+		for (int y = minY; y <= maxY; y++){
+			int paletteId = snapshot.getPaletteId(x, y, z);
+			if (BlockStateRegistry.hasFlag(paletteId, BlockStateRegistry.FLAG_AIR)) continue;
+			
+			maxHeight = y;
+			
+			BlockStateModel blockModel = renderBlock(visibility, context, BlockStateRegistry.getState(paletteId), x, y, z, min, renderSettings);
+			color = MathUtil.overlayColors(blockModel.getMapColor(), color);
+			mesh.merge(blockModel);
+		}
+
+		model.setHeight(x, z, maxHeight);
+		model.setColor(x, z, color);
+	}
+	
+	/**
+	 * Renders the blocks of a column from the top down to the first block that is hidden from all map viewing angles (see {@link #isColumnOccluded(TileSnapshot, int, int, int)}).<br>
+	 * The map-color stops being composited as soon as it is opaque.
+	 */
+	private void renderColumnTopDown(TileSnapshot snapshot, SkyVisibility visibility, SlidingBlockContext context, int x, int z, Vector3i min, int minY, int maxY, RenderSettings renderSettings, HiresModel model, Model mesh) {
+		int maxHeight = -1;
+		Vector4f color = Vector4f.ZERO;
+		
+		for (int y = maxY; y >= minY; y--){
+			int paletteId = snapshot.getPaletteId(x, y, z);
+			if (BlockStateRegistry.hasFlag(paletteId, BlockStateRegistry.FLAG_AIR)) continue;
+			
+			if (maxHeight < 0) maxHeight = y;
+			
+			BlockStateModel blockModel = renderBlock(visibility, context, BlockStateRegistry.getState(paletteId), x, y, z, min, renderSettings);
+			if (color.getW() < 1) color = MathUtil.overlayColors(color, blockModel.getMapColor());
+			mesh.merge(blockModel);
+			
+			if (y > minY && isColumnOccluded(snapshot, x, y, z)) break;
+		}
+		
+		model.setHeight(x, z, Math.max(maxHeight, 0));
+		model.setColor(x, z, color);
+	}
+	
+	/**
+	 * Returns true if all blocks below the given block in its column are hidden from all map viewing angles:<br>
+	 * The block and its four horizontal neighbours are occluding neighbour-faces, and the block below and its four horizontal neighbours
+	 * are occluding neighbour-faces or have no sunlight.<br>
+	 * (So the column is covered from above and from the sides at this height, and there is no overhang or sky-lit cave next to the block below)
+	 */
+	private boolean isColumnOccluded(TileSnapshot snapshot, int x, int y, int z) {
+		if (!snapshot.isOccludingNeighborFaces(x, y, z)) return false;
+		if (!snapshot.isOccludingNeighborFaces(x + 1, y, z)) return false;
+		if (!snapshot.isOccludingNeighborFaces(x - 1, y, z)) return false;
+		if (!snapshot.isOccludingNeighborFaces(x, y, z + 1)) return false;
+		if (!snapshot.isOccludingNeighborFaces(x, y, z - 1)) return false;
+		
+		if (!isHiddenFromSky(snapshot, x, y - 1, z)) return false;
+		if (!isHiddenFromSky(snapshot, x + 1, y - 1, z)) return false;
+		if (!isHiddenFromSky(snapshot, x - 1, y - 1, z)) return false;
+		if (!isHiddenFromSky(snapshot, x, y - 1, z + 1)) return false;
+		if (!isHiddenFromSky(snapshot, x, y - 1, z - 1)) return false;
+		
+		return true;
+	}
+	
+	private boolean isHiddenFromSky(TileSnapshot snapshot, int x, int y, int z) {
+		return snapshot.isOccludingNeighborFaces(x, y, z) || snapshot.getSunLight(x, y, z) <= 0;
+	}
+	
+	/**
+	 * Returns the y-coordinate of the highest block of the column between minY and maxY that is not air, or minY if there is none.<br>
+	 * (The highest block of {@link WorldChunk#getHighestBlockY(int, int)} may be higher than the actual surface)
+	 */
+	private static int getSurfaceY(TileSnapshot snapshot, int x, int z, int minY, int maxY) {
+		for (int y = maxY; y > minY; y--) {
+			if (!BlockStateRegistry.hasFlag(snapshot.getPaletteId(x, y, z), BlockStateRegistry.FLAG_AIR)) return y;
+		}
+		
+		return minY;
+	}
+	
+	/**
+	 * Returns the region of world-chunk that is needed for a tile-region, with the y-range cut to the given bounds
+	 */
+	private static AABB getChunkRegion(AABB region, int minY, int maxY) {
+		AABB chunkRegion = region.expand(4, 0, 4);
+		if (maxY <= minY) return chunkRegion;
+		
+		Vector3d chunkMin = chunkRegion.getMin();
+		Vector3d chunkMax = chunkRegion.getMax();
+		return new AABB(
+				new Vector3d(chunkMin.getX(), Math.max(chunkMin.getY(), minY), chunkMin.getZ()), 
+				new Vector3d(chunkMax.getX(), Math.min(chunkMax.getY(), maxY), chunkMax.getZ())
+			);
+	}
+	
+	private BlockStateModel renderBlock(SkyVisibility visibility, SlidingBlockContext context, BlockState blockState, int x, int y, int z, Vector3i min, RenderSettings renderSettings) {
+		BlockStateModel blockModel;
+		try {
+			context.moveTo(x, y, z);
+			blockModel = modelFactory.createFrom(blockState, context, renderSettings);
+		} catch (NoSuchResourceException | InvalidResourceDeclarationException | NoSuchTextureException e) {
+			blockModel = new BlockStateModel();						
+			logger.noFloodWarning("HiresModelRenderer-blockmodelerr-" + blockState.getResourceId(), "Failed to create BlockModel for BlockState: " + blockState + " (" + e.toString() + ")");
+		}
+		
+		blockModel.translate(new Vector3f(x, y, z).sub(min.toFloat()));
+		
+		//TODO: quick hack to random offset grass
+		if (blockState.getResourceId().equals("tall_grass")){
+			float dx = (MathUtil.hashToFloat(x, y, z, 123984) - 0.5f) * 0.75f;
+			float dz = (MathUtil.hashToFloat(x, y, z, 345542) - 0.5f) * 0.75f;
+			blockModel.translate(new Vector3f(dx, 0, dz));
+		}
+		
+		//the map-color stays, even if all faces are culled
+		if (visibility != null) visibility.cullFaces(blockModel, x, y, z, new Vector3f(x, y, z).sub(min.toFloat()));
+		
+		return blockModel;
+	}
+	
 }
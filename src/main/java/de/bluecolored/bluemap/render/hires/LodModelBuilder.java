@@ -0,0 +1,214 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render.hires;
+
+import com.flowpowered.math.vector.Vector2f;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+import com.flowpowered.math.vector.Vector4f;
+
+import de.bluecolored.bluemap.model.Face;
+import de.bluecolored.bluemap.model.Model;
+
+/**
+ * Creates a simplified level-of-detail variant of a hires-model, that the web-viewer can load instead of the full model for tiles in the middle distance.<br>
+ * The variant is a heightfield with one block resolution: Every column of the tile is collapsed to a box from its highest block down,
+ * colored with the map-color of the column. So there are no textures and no small models (like foliage) in it anymore.<br>
+ * <br>
+ * <i>
+ * Implementation note:<br>
+ * The tops of neighbouring columns with the same height and color are merged into one quad, and walls are only created where a column is higher than its neighbour.
+ * On the border of the tile the walls go down to the lowest column of the tile, so there are no gaps to the neighbouring tiles.
+ * </i>
+ */
+class LodModelBuilder {
+	
+	private static final Vector2f UV = Vector2f.ZERO;
+	
+	private final HiresModel model;
+	
+	private final int sizeX, sizeZ;
+	private final float[][] tops; //NaN for empty columns
+	private final Vector3f[][] colors;
+	private float floor;
+	
+	private LodModelBuilder(HiresModel model) {
+		this.model = model;
+		this.sizeX = model.getBlockSize().getX();
+		this.sizeZ = model.getBlockSize().getZ();
+		this.tops = new float[sizeX][sizeZ];
+		this.colors = new Vector3f[sizeX][sizeZ];
+	}
+	
+	/**
+	 * Creates the heightfield-variant of the given hires-model, using the same coordinates as the hires-model
+	 */
+	public static Model createHeightfield(HiresModel model) {
+		LodModelBuilder builder = new LodModelBuilder(model);
+		builder.readColumns();
+		return builder.build();
+	}
+	
+	private void readColumns() {
+		Vector3i min = model.getBlockMin();
+		
+		floor = Float.POSITIVE_INFINITY;
+		Vector3f colorSum = Vector3f.ZERO;
+		int colorCount = 0;
+		for (int x = 0; x < sizeX; x++) {
+			for (int z = 0; z < sizeZ; z++) {
+				int height = model.getHeight(min.getX() + x, min.getZ() + z);
+				Vector4f color = model.getColor(min.getX() + x, min.getZ() + z);
+				boolean hasColor = color != null && color.getW() > 0;
+				
+				//the renderer leaves the height of columns without any blocks at 0
+				if (!hasColor && height <= Math.max(min.getY(), 0)) {
+					tops[x][z] = Float.NaN;
+					continue;
+				}
+				
+				tops[x][z] = height + 1 - min.getY();
+				floor = Math.min(floor, tops[x][z]);
+				
+				if (hasColor) {
+					colors[x][z] = color.toVector3();
+					colorSum = colorSum.add(colors[x][z]);
+					colorCount++;
+				}
+			}
+		}
+		
+		//columns that only contain blocks without a map-color get the average color of the tile
+		Vector3f fallbackColor = colorCount > 0 ? colorSum.div(colorCount) : Vector3f.ONE;
+		for (int x = 0; x < sizeX; x++) {
+			for (int z = 0; z < sizeZ; z++) {
+				if (colors[x][z] == null) colors[x][z] = fallbackColor;
+			}
+		}
+	}
+	
+	private Model build() {
+		Model lod = new Model();
+		
+		for (int x = 0; x < sizeX; x++) {
+			int z = 0;
+			while (z < sizeZ) {
+				if (Float.isNaN(tops[x][z])) {
+					z++;
+					continue;
+				}
+				
+				//merge the tops of following columns with the same height and color
+				int end = z + 1;
+				while (end < sizeZ && tops[x][end] == tops[x][z] && colors[x][end].equals(colors[x][z])) end++;
+				
+				float y = tops[x][z];
+				addQuad(lod, colors[x][z],
+						new Vector3f(x    , y, end),
+						new Vector3f(x + 1, y, end),
+						new Vector3f(x + 1, y, z  ),
+						new Vector3f(x    , y, z  )
+					);
+				
+				z = end;
+			}
+		}
+		
+		for (int x = 0; x < sizeX; x++) {
+			for (int z = 0; z < sizeZ; z++) {
+				float y1 = tops[x][z];
+				if (Float.isNaN(y1)) continue;
+				
+				Vector3f color = colors[x][z];
+				float y0;
+				
+				y0 = getNeighbourTop(x + 1, z);
+				if (y0 < y1) addQuad(lod, color,
+						new Vector3f(x + 1, y0, z + 1),
+						new Vector3f(x + 1, y0, z    ),
+						new Vector3f(x + 1, y1, z    ),
+						new Vector3f(x + 1, y1, z + 1)
+					);
+				
+				y0 = getNeighbourTop(x - 1, z);
+				if (y0 < y1) addQuad(lod, color,
+						new Vector3f(x, y0, z    ),
+						new Vector3f(x, y0, z + 1),
+						new Vector3f(x, y1, z + 1),
+						new Vector3f(x, y1, z    )
+					);
+				
+				y0 = getNeighbourTop(x, z + 1);
+				if (y0 < y1) addQuad(lod, color,
+						new Vector3f(x    , y0, z + 1),
+						new Vector3f(x + 1, y0, z + 1),
+						new Vector3f(x + 1, y1, z + 1),
+						new Vector3f(x    , y1, z + 1)
+					);
+				
+				y0 = getNeighbourTop(x, z - 1);
+				if (y0 < y1) addQuad(lod, color,
+						new Vector3f(x + 1, y0, z),
+						new Vector3f(x    , y0, z),
+						new Vector3f(x    , y1, z),
+						new Vector3f(x + 1, y1, z)
+					);
+			}
+		}
+		
+		return lod;
+	}
+	
+	/**
+	 * Returns the height down to which the wall towards this column goes
+	 */
+	private float getNeighbourTop(int x, int z) {
+		if (x < 0 || x >= sizeX || z < 0 || z >= sizeZ) return floor;
+		
+		float top = tops[x][z];
+		if (Float.isNaN(top)) return floor;
+		return top;
+	}
+	
+	/**
+	 * Adds a quad with the given corners (counter-clockwise when looked at from the front) in one color
+	 */
+	private void addQuad(Model lod, Vector3f color, Vector3f p0, Vector3f p1, Vector3f p2, Vector3f p3) {
+		Face f1 = new Face(p0, p1, p2, UV, UV, UV, 0);
+		Face f2 = new Face(p0, p2, p3, UV, UV, UV, 0);
+		
+		f1.setC1(color);
+		f1.setC2(color);
+		f1.setC3(color);
+		
+		f2.setC1(color);
+		f2.setC2(color);
+		f2.setC3(color);
+		
+		lod.addFace(f1);
+		lod.addFace(f2);
+	}
+	
+}
@@ -0,0 +1,179 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render.hires;
+
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+
+import de.bluecolored.bluemap.model.Face;
+import de.bluecolored.bluemap.model.Model;
+import de.bluecolored.bluemap.render.context.TileSnapshot;
+
+/**
+ * Decides which faces of a tile can be seen by the camera of the web-viewer.<br>
+ * The camera can get close to the blocks and look at them from many angles (even from below, e.g. under overhangs), 
+ * so only faces that can not be seen from anywhere are dropped: faces that are fully enclosed by occluding blocks,
+ * with no path through non-occluding blocks to the outside of the snapshot (e.g. the walls of closed caves).<br>
+ * Everything outside of the snapshot is assumed to be reachable.<br>
+ * <br>
+ * <i>
+ * Implementation note:<br>
+ * All non-occluding blocks on the border of the snapshot are reachable, and from there a flood-fill marks all non-occluding blocks
+ * that are connected to them in any of the six directions.
+ * </i>
+ */
+class SkyVisibility {
+	
+	private static final float EPSILON = 0.0001f;
+	
+	private final int minX, minY, minZ;
+	private final int sizeX, sizeY, sizeZ;
+	
+	private final boolean[] reachable;
+	
+	private SkyVisibility(Vector3i min, Vector3i max) {
+		this.minX = min.getX();
+		this.minY = min.getY();
+		this.minZ = min.getZ();
+		this.sizeX = max.getX() - minX + 1;
+		this.sizeY = max.getY() - minY + 1;
+		this.sizeZ = max.getZ() - minZ + 1;
+		
+		this.reachable = new boolean[Math.max(sizeX * sizeY * sizeZ, 0)];
+	}
+	
+	/**
+	 * Computes which blocks of the snapshot are reachable from the outside
+	 */
+	public static SkyVisibility compute(TileSnapshot snapshot) {
+		SkyVisibility visibility = new SkyVisibility(snapshot.getMin(), snapshot.getMax());
+		visibility.floodFill(snapshot);
+		return visibility;
+	}
+	
+	private void floodFill(TileSnapshot snapshot) {
+		int[] queue = new int[reachable.length];
+		int head = 0, tail = 0;
+		
+		for (int x = 0; x < sizeX; x++) {
+			for (int z = 0; z < sizeZ; z++) {
+				for (int y = 0; y < sizeY; y++) {
+					if (
+							x == 0 || y == 0 || z == 0 ||
+							x == sizeX - 1 || y == sizeY - 1 || z == sizeZ - 1
+						) {
+						tail = spread(snapshot, x, y, z, queue, tail);
+					}
+				}
+			}
+		}
+		
+		while (head < tail) {
+			int index = queue[head++];
+			int y = index % sizeY;
+			int column = index / sizeY;
+			int x = column / sizeZ;
+			int z = column % sizeZ;
+			
+			tail = spread(snapshot, x + 1, y, z, queue, tail);
+			tail = spread(snapshot, x - 1, y, z, queue, tail);
+			tail = spread(snapshot, x, y + 1, z, queue, tail);
+			tail = spread(snapshot, x, y - 1, z, queue, tail);
+			tail = spread(snapshot, x, y, z + 1, queue, tail);
+			tail = spread(snapshot, x, y, z - 1, queue, tail);
+		}
+	}
+	
+	private int spread(TileSnapshot snapshot, int x, int y, int z, int[] queue, int tail) {
+		if (x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ) return tail;
+		
+		int index = getIndex(x, y, z);
+		if (reachable[index]) return tail;
+		if (snapshot.isOccludingNeighborFaces(minX + x, minY + y, minZ + z)) return tail;
+		
+		reachable[index] = true;
+		queue[tail++] = index;
+		return tail;
+	}
+	
+	private int getIndex(int x, int y, int z) {
+		return (x * sizeZ + z) * sizeY + y;
+	}
+	
+	/**
+	 * Returns true if there is a path through non-occluding blocks from the block on this position to the outside of the snapshot
+	 */
+	public boolean isReachable(int x, int y, int z) {
+		x -= minX;
+		y -= minY;
+		z -= minZ;
+		
+		if (x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ) return true;
+		return reachable[getIndex(x, y, z)];
+	}
+	
+	/**
+	 * Removes all faces from the model of the block on the given position that can not be seen.
+	 *
+	 * @param cellOrigin the position of the block in the coordinates of the model
+	 */
+	public void cullFaces(Model model, int x, int y, int z, Vector3f cellOrigin) {
+		model.getFaces().removeIf(face -> !isVisible(face, x, y, z, cellOrigin));
+	}
+	
+	private boolean isVisible(Face face, int x, int y, int z, Vector3f cellOrigin) {
+		Vector3f n = face.getFaceNormal();
+		
+		Vector3f p1 = face.getP1().sub(cellOrigin);
+		Vector3f p2 = face.getP2().sub(cellOrigin);
+		Vector3f p3 = face.getP3().sub(cellOrigin);
+		Vector3f min = p1.min(p2).min(p3);
+		Vector3f max = p1.max(p2).max(p3);
+		
+		//faces that reach out of the block are always kept
+		if (
+				min.getX() < -EPSILON || min.getY() < -EPSILON || min.getZ() < -EPSILON ||
+				max.getX() > 1 + EPSILON || max.getY() > 1 + EPSILON || max.getZ() > 1 + EPSILON
+			) return true;
+		
+		//a face on a side of the block that faces outwards can only be seen through the neighbour on that side
+		if (n.getX() > 1 - EPSILON && min.getX() > 1 - EPSILON) return isReachable(x + 1, y, z);
+		if (n.getX() < -1 + EPSILON && max.getX() < EPSILON) return isReachable(x - 1, y, z);
+		if (n.getY() > 1 - EPSILON && min.getY() > 1 - EPSILON) return isReachable(x, y + 1, z);
+		if (n.getY() < -1 + EPSILON && max.getY() < EPSILON) return isReachable(x, y - 1, z);
+		if (n.getZ() > 1 - EPSILON && min.getZ() > 1 - EPSILON) return isReachable(x, y, z + 1);
+		if (n.getZ() < -1 + EPSILON && max.getZ() < EPSILON) return isReachable(x, y, z - 1);
+		
+		//otherwise the face can be seen through any side of the block
+		return
+				isReachable(x + 1, y, z) ||
+				isReachable(x - 1, y, z) ||
+				isReachable(x, y + 1, z) ||
+				isReachable(x, y - 1, z) ||
+				isReachable(x, y, z + 1) ||
+				isReachable(x, y, z - 1);
+	}
+	
+}
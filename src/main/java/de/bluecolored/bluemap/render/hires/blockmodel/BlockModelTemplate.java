@@ -0,0 +1,107 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.render.hires.blockmodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.bluecolored.bluemap.model.Face;
+import de.bluecolored.bluemap.resourcepack.CompiledBlockModel;
+import de.bluecolored.bluemap.util.Direction;
+
+/**
+ * The context-independent part of a model created by the {@link ResourceModelBuilder}: 
+ * The final geometry of all faces that are not culled, without light, ambient-occlusion and tint.<br>
+ * A template only depends on the block-state, the chosen model-variants and which neighbours are culling faces, 
+ * so it can be reused for all blocks with the same {@link #getCacheKey}.<br>
+ * <br>
+ * <i>A template is immutable once it is built, the faces have to be copied before they are changed.</i>
+ */
+class BlockModelTemplate {
+	
+	private static final int MAX_VARIANT_COMBINATIONS = 1 << 26;
+	
+	private List<TemplateFace> faces;
+	
+	public BlockModelTemplate() {
+		this.faces = new ArrayList<>();
+	}
+	
+	public void addFace(TemplateFace face) {
+		faces.add(face);
+	}
+	
+	public List<TemplateFace> getFaces() {
+		return faces;
+	}
+	
+	/**
+	 * Returns the key of a template, or -1 if the template can not be cached because there are too many variant-combinations
+	 * 
+	 * @param paletteId the palette-id of the block-state
+	 * @param variant the index of the chosen combination of model-variants
+	 * @param variantCount the number of possible combinations of model-variants
+	 * @param cullMask a bit for each {@link Direction} (by ordinal) that is set if the neighbour in that direction is culling faces
+	 */
+	public static long getCacheKey(int paletteId, long variant, long variantCount, int cullMask) {
+		if (variantCount > MAX_VARIANT_COMBINATIONS) return -1;
+		return ((long) paletteId << 32) | (variant << 6) | cullMask;
+	}
+	
+	/**
+	 * A pair of triangles created from one face of a compiled model, with the final geometry but without light, ambient-occlusion and tint
+	 */
+	public static class TemplateFace {
+		
+		private final CompiledBlockModel model;
+		private final int face;
+		private final Face f1, f2;
+		
+		public TemplateFace(CompiledBlockModel model, int face, Face f1, Face f2) {
+			this.model = model;
+			this.face = face;
+			this.f1 = f1;
+			this.f2 = f2;
+		}
+
+		public CompiledBlockModel getModel() {
+			return model;
+		}
+
+		public int getFace() {
+			return face;
+		}
+
+		public Face getF1() {
+			return f1;
+		}
+
+		public Face getF2() {
+			return f2;
+		}
+		
+	}
+	
+}
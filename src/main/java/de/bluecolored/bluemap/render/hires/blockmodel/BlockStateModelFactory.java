@@ -24,6 +24,9 @@
  */
 package de.bluecolored.bluemap.render.hires.blockmodel;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import de.bluecolored.bluemap.api.BlockState;
 import de.bluecolored.bluemap.render.RenderSettings;
 import de.bluecolored.bluemap.render.context.EmptyBlockContext;
@@ -37,9 +40,11 @@
 public class BlockStateModelFactory {
 
 	private ResourcePack resourcePack;
+	private Map<Long, BlockModelTemplate> templateCache;
 	
 	public BlockStateModelFactory(ResourcePack resources) {
 		this.resourcePack = resources;
+		this.templateCache = new ConcurrentHashMap<>();
 	}
 
 	public BlockStateModel createFrom(BlockState blockState) throws NoSuchResourceException, InvalidResourceDeclarationException, NoSuchTextureException {
@@ -63,16 +68,13 @@ public boolean isAmbientOcclusion() {
 	
 	public BlockStateModel createFrom(BlockState blockState, ExtendedBlockContext context, RenderSettings renderSettings) throws NoSuchResourceException, InvalidResourceDeclarationException, NoSuchTextureException {
 		// if it is a liquid, use the LiquidModelBuilder
-		if (
-				blockState.getResourceId().equals("water") ||
-				blockState.getResourceId().equals("lava")
-		){
+		if (blockState.isLiquid()){
 			return new LiquidModelBuilder(blockState, context, resourcePack.getTextureProvider(), renderSettings).build();
 		}
 		
 		// if no other model builder matched try to find a model definition from the resource-packs and use the default ResourceModelBuilder
 		BlockStateResource resource = resourcePack.getBlockStateResource(blockState);
-		return new ResourceModelBuilder(resource, context, resourcePack, renderSettings).build();
+		return new ResourceModelBuilder(resource, context, resourcePack, renderSettings, templateCache).build();
 	}
 	
 }
@@ -27,9 +27,9 @@
 import com.flowpowered.math.matrix.Matrix3f;
 import com.flowpowered.math.vector.Vector2f;
 import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
 import com.flowpowered.math.vector.Vector4f;
 
-import de.bluecolored.bluemap.api.Block;
 import de.bluecolored.bluemap.api.BlockState;
 import de.bluecolored.bluemap.model.Face;
 import de.bluecolored.bluemap.model.Model;
@@ -62,12 +62,12 @@ public LiquidModelBuilder(BlockState blockState, ExtendedBlockContext context, T
 	}
 
 	public BlockStateModel build() throws NoSuchTextureException {
-		if (this.renderSettings.isExcludeFacesWithoutSunlight() && context.getRelativeBlock(0, 0, 0).getSunLightLevel() == 0) return new BlockStateModel();
+		if (this.renderSettings.isExcludeFacesWithoutSunlight() && context.getRelativeSunLightLevel(0, 0, 0) == 0) return new BlockStateModel();
 		
-		String id = blockState.getResourceId();
+		int id = blockState.getResourcePaletteId();
 		int level = getLiquidLevel(blockState);
 		
-		if (level >= 8 ||level == 0 && isLiquid(id, context.getRelativeBlock(0, 1, 0))){
+		if (level >= 8 ||level == 0 && isLiquid(id, context.getRelativeBlockState(0, 1, 0))){
 			this.heights = new float[]{16f, 16f, 16f, 16f};
 			return buildModel();
 		}
@@ -82,10 +82,10 @@ public BlockStateModel build() throws NoSuchTextureException {
 		return buildModel();
 	}
 	
-	private float getLiquidCornerHeight(String liquidId, int x, int y, int z){
+	private float getLiquidCornerHeight(int liquidId, int x, int y, int z){
 		for (int ix = x; ix <= x+1; ix++){
 			for (int iz = z; iz<= z+1; iz++){
-				if (isLiquid(liquidId, context.getRelativeBlock(ix, y+1, iz))){
+				if (isLiquid(liquidId, context.getRelativeBlockState(ix, y+1, iz))){
 					return 16f;
 				}
 			}
@@ -96,11 +96,11 @@ private float getLiquidCornerHeight(String liquidId, int x, int y, int z){
 		
 		for (int ix = x; ix <= x+1; ix++){
 			for (int iz = z; iz<= z+1; iz++){
-				Block b = context.getRelativeBlock(ix, y, iz);
+				BlockState b = context.getRelativeBlockState(ix, y, iz);
 				if (isLiquid(liquidId, b)){
-					if (getLiquidLevel(b.getBlockState()) == 0) return 14f;
+					if (getLiquidLevel(b) == 0) return 14f;
 					
-					sumHeight += getLiquidBaseHeight(b.getBlockState());
+					sumHeight += getLiquidBaseHeight(b);
 					count++;
 				} 
 				
@@ -117,13 +117,13 @@ else if (!isLiquidBlockingBlock(b)){
 		return sumHeight / count;
 	}
 	
-	private boolean isLiquidBlockingBlock(Block b){
-		if (b.getBlockState().getResourceId().equals("air")) return false;
+	private boolean isLiquidBlockingBlock(BlockState b){
+		if (b.isAir()) return false;
 		return true;
 	}
 	
-	private boolean isLiquid(String id, Block block){
-		return block.getBlockState().getResourceId().equals(id); 
+	private boolean isLiquid(int resourcePaletteId, BlockState blockState){
+		return blockState.getResourcePaletteId() == resourcePaletteId; 
 	}
 	
 	private float getLiquidBaseHeight(BlockState block){
@@ -169,8 +169,11 @@ private BlockStateModel buildModel() throws NoSuchTextureException {
 	private void createElementFace(Model model, Direction faceDir, Vector3f c0, Vector3f c1, Vector3f c2, Vector3f c3) throws NoSuchTextureException {
 		
 		//face culling
-		Block bl = context.getRelativeBlock(faceDir);
-		if (bl.getBlockState().getResourceId().equals(blockState.getResourceId()) || (faceDir != Direction.UP && bl.isCullingNeighborFaces())) return;
+		Vector3i faceDirVector = faceDir.toVector();
+		if (
+				context.getRelativeBlockState(faceDirVector.getX(), faceDirVector.getY(), faceDirVector.getZ()).getResourcePaletteId() == blockState.getResourcePaletteId() || 
+				(faceDir != Direction.UP && context.isRelativeCullingNeighborFaces(faceDirVector.getX(), faceDirVector.getY(), faceDirVector.getZ()))
+			) return;
 
 		//UV
 		Vector4f uv = new Vector4f(0, 0, 16, 16).div(16);
@@ -194,8 +197,8 @@ private void createElementFace(Model model, Direction faceDir, Vector3f c0, Vect
 		if (renderSettings.isLighting()) {
 			light = 0f;
 			for (Direction d : Direction.values()){
-				Block b = context.getRelativeBlock(d.toVector());
-				float l = (float) (Math.max(b.getBlockLightLevel(), b.getSunLightLevel()) / 15f);
+				Vector3i v = d.toVector();
+				float l = (float) (Math.max(context.getRelativeBlockLightLevel(v.getX(), v.getY(), v.getZ()), context.getRelativeSunLightLevel(v.getX(), v.getY(), v.getZ())) / 15f);
 				if (l > light) light = l;
 			}
 		}
@@ -24,11 +24,9 @@
  */
 package de.bluecolored.bluemap.render.hires.blockmodel;
 
-import com.flowpowered.math.TrigMath;
-import com.flowpowered.math.imaginary.Complexf;
-import com.flowpowered.math.imaginary.Quaternionf;
-import com.flowpowered.math.matrix.Matrix3f;
-import com.flowpowered.math.vector.Vector2f;
+import java.util.Collection;
+import java.util.Map;
+
 import com.flowpowered.math.vector.Vector3f;
 import com.flowpowered.math.vector.Vector3i;
 import com.flowpowered.math.vector.Vector4f;
@@ -38,10 +36,11 @@
 import de.bluecolored.bluemap.render.RenderSettings;
 import de.bluecolored.bluemap.render.context.BlockContext;
 import de.bluecolored.bluemap.render.context.ExtendedBlockContext;
-import de.bluecolored.bluemap.resourcepack.BlockModelElementFaceResource;
-import de.bluecolored.bluemap.resourcepack.BlockModelElementResource;
+import de.bluecolored.bluemap.render.hires.blockmodel.BlockModelTemplate.TemplateFace;
 import de.bluecolored.bluemap.resourcepack.BlockModelResource;
 import de.bluecolored.bluemap.resourcepack.BlockStateResource;
+import de.bluecolored.bluemap.resourcepack.CompiledBlockModel;
+import de.bluecolored.bluemap.resourcepack.CullShape;
 import de.bluecolored.bluemap.resourcepack.NoSuchTextureException;
 import de.bluecolored.bluemap.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.resourcepack.TextureProvider.Texture;
@@ -54,176 +53,187 @@
  */
 public class ResourceModelBuilder {
 	
-	private static final Vector3f HALF_3F = Vector3f.ONE.mul(0.5);
-	private static final Vector3f NEG_HALF_3F = HALF_3F.negate();
-	private static final Vector2f HALF_2F = Vector2f.ONE.mul(0.5);
+	private static final int MAX_TEMPLATE_CACHE_SIZE = 100000;
+	
+	//the ambient-occlusion light of a corner by the number of its occluding neighbour-samples
+	private static final double[] AO_LIGHT = { 1.0, 0.75, 0.5, 0.25 };
 	
 	private BlockStateResource resource;
 	private ExtendedBlockContext context;
 	private ResourcePack resourcePack;
 	private RenderSettings renderSettings;
+	private Map<Long, BlockModelTemplate> templateCache;
+	
+	private int occludingNeighbours; //-1 if not yet read from the context
 	
 	public ResourceModelBuilder(BlockStateResource resource, ExtendedBlockContext context, ResourcePack resourcePack, RenderSettings renderSettings) {
+		this(resource, context, resourcePack, renderSettings, null);
+	}
+	
+	/**
+	 * @param templateCache a (concurrent) map to cache the context-independent parts of the built models, or null to not cache anything
+	 */
+	ResourceModelBuilder(BlockStateResource resource, ExtendedBlockContext context, ResourcePack resourcePack, RenderSettings renderSettings, Map<Long, BlockModelTemplate> templateCache) {
 		this.resource = resource;
 		this.context = context;
 		this.resourcePack = resourcePack;
 		this.renderSettings = renderSettings;
+		this.templateCache = templateCache;
 	}
 
 	public BlockStateModel build() throws NoSuchTextureException {
-		BlockStateModel model = new BlockStateModel();
+		Collection<WeighedArrayList<BlockModelResource>> modelResources = resource.getModelResources();
+		BlockModelResource[] models = new BlockModelResource[modelResources.size()];
+		
+		long variant = 0;
+		long variantCount = 1;
+		int i = 0;
+		for (WeighedArrayList<BlockModelResource> bmrList : modelResources){
+			int index = (int) Math.floor(MathUtil.hashToFloat(context.getPosition(), 23489756) * (float) bmrList.size());
+			models[i++] = bmrList.get(index);
+			
+			variant += index * variantCount;
+			variantCount *= bmrList.size();
+		}
 		
-		for (WeighedArrayList<BlockModelResource> bmrList : resource.getModelResources()){
-			BlockModelResource bmr = bmrList.get((int) Math.floor(MathUtil.hashToFloat(context.getPosition(), 23489756) * (float) bmrList.size()));
+		BlockModelTemplate template;
+		if (templateCache != null) {
+			long key = BlockModelTemplate.getCacheKey(resource.getBlock().getPaletteId(), variant, variantCount, getCullMask());
+			template = key >= 0 ? templateCache.get(key) : null;
 			
-			model.merge(fromModelResource(bmr));
+			if (template == null) {
+				template = buildTemplate(models);
+				if (key >= 0 && templateCache.size() < MAX_TEMPLATE_CACHE_SIZE) templateCache.putIfAbsent(key, template);
+			}
+		} else {
+			template = buildTemplate(models);
 		}
 		
-		return model;
-	}
-	
-	private BlockStateModel fromModelResource(BlockModelResource bmr) throws NoSuchTextureException {
-		BlockStateModel model = new BlockStateModel();
+		occludingNeighbours = -1;
 		
-		for (BlockModelElementResource bmer : bmr.getElements()){
-			model.merge(fromModelElementResource(bmer));
+		BlockStateModel model = new BlockStateModel();
+		for (TemplateFace face : template.getFaces()) {
+			if (isHiddenByNeighbour(face)) continue;
+			createFace(model, face);
 		}
 		
-		model.translate(NEG_HALF_3F);
-		model.rotate(Quaternionf.fromAxesAnglesDeg(
-				-bmr.getXRot(),
-				-bmr.getYRot(),
-				0
-			));
-		model.translate(HALF_3F);
-		
 		return model;
 	}
 	
-	private BlockStateModel fromModelElementResource(BlockModelElementResource bmer) throws NoSuchTextureException {
-		BlockStateModel model = new BlockStateModel();
-		
-		//create faces
-		Vector3f min = bmer.getFrom().min(bmer.getTo());
-		Vector3f max = bmer.getFrom().max(bmer.getTo());
+	/**
+	 * Returns true if the face is hidden by the cull-shape of the neighbour in its cull-direction (see {@link CompiledBlockModel#isHiddenBy})<br>
+	 * <i>(This is done after the template is built, because the cull-shapes of the neighbours are not part of the template-key)</i>
+	 */
+	private boolean isHiddenByNeighbour(TemplateFace templateFace) {
+		CompiledBlockModel m = templateFace.getModel();
+		int face = templateFace.getFace();
+		
+		Direction cullDirection = m.getCullDirection(face);
+		if (cullDirection == null) return false;
+		
+		Vector3i v = cullDirection.toVector();
+		CullShape neighbour = resourcePack.getCullShape(context.getRelativeBlockState(v.getX(), v.getY(), v.getZ()));
+		return m.isHiddenBy(face, neighbour);
+	}
+	
+	/**
+	 * Returns a bit for each direction (by ordinal) that is set if the neighbour in that direction is culling faces
+	 */
+	private int getCullMask() {
+		int mask = 0;
+		for (Direction direction : Direction.values()) {
+			Vector3i v = direction.toVector();
+			if (context.isRelativeCullingNeighborFaces(v.getX(), v.getY(), v.getZ())) mask |= 1 << direction.ordinal();
+		}
 		
-		Vector3f[] c = new Vector3f[]{
-			new Vector3f( min .getX(), min .getY(), min .getZ()),
-			new Vector3f( min .getX(), min .getY(), max .getZ()),
-			new Vector3f( max .getX(), min .getY(), min .getZ()),
-			new Vector3f( max .getX(), min .getY(), max .getZ()),
-			new Vector3f( min .getX(), max .getY(), min .getZ()),
-			new Vector3f( min .getX(), max .getY(), max .getZ()),
-			new Vector3f( max .getX(), max .getY(), min .getZ()),
-			new Vector3f( max .getX(), max .getY(), max .getZ()),
-		};
+		return mask;
+	}
+	
+	private BlockModelTemplate buildTemplate(BlockModelResource[] models) throws NoSuchTextureException {
+		BlockModelTemplate template = new BlockModelTemplate();
 		
-		createElementFace(model, bmer.getDownFace(), Direction.DOWN, c[0], c[2], c[3], c[1]);
-		createElementFace(model, bmer.getUpFace(), Direction.UP, c[5], c[7], c[6], c[4]);
-		createElementFace(model, bmer.getNorthFace(), Direction.NORTH, c[2], c[0], c[4], c[6]);
-		createElementFace(model, bmer.getSouthFace(), Direction.SOUTH, c[1], c[3], c[7], c[5]);
-		createElementFace(model, bmer.getWestFace(), Direction.WEST, c[0], c[1], c[5], c[4]);
-		createElementFace(model, bmer.getEastFace(), Direction.EAST, c[3], c[2], c[6], c[7]);
-
-		//rotate
-		if (bmer.isRotation()){
-			Vector3f translation = bmer.getRotationOrigin();
-			model.translate(translation.negate());
+		for (BlockModelResource bmr : models){
+			CompiledBlockModel model = bmr.getCompiledModel();
 			
-			model.rotate(Quaternionf.fromAngleDegAxis(
-					bmer.getRotationAngle(),
-					bmer.getRotationAxis().toVector().toFloat()
-				));
-
-			if (bmer.isRotationRescale()){
-				Vector3f scale = 
-						Vector3f.ONE
-						.sub(bmer.getRotationAxis().toVector().toFloat())
-						.mul(Math.abs(TrigMath.sin(bmer.getRotationAngle() * TrigMath.DEG_TO_RAD)))
-						.mul(1 - (TrigMath.SQRT_OF_TWO - 1))
-						.add(Vector3f.ONE);
-				model.transform(Matrix3f.createScaling(scale));
+			for (int face = 0; face < model.getFaceCount(); face++){
+				
+				//face culling
+				Direction cullDirection = model.getCullDirection(face);
+				if (cullDirection != null) {
+					Vector3i v = cullDirection.toVector();
+					if (context.isRelativeCullingNeighborFaces(v.getX(), v.getY(), v.getZ())) continue;
+				}
+				
+				int textureId;
+				try {
+					textureId = model.getTextureId(face);
+				} catch (NoSuchTextureException e) {
+					throw new NoSuchTextureException(e.getMessage() + " (block: " + resource.getBlock() + ")", e);
+				}
+				
+				Face f1 = new Face(
+						model.getPosition(face, 0), model.getPosition(face, 1), model.getPosition(face, 2), 
+						model.getNormal(face, 0), model.getNormal(face, 0), model.getNormal(face, 0), 
+						model.getUv(face, 0), model.getUv(face, 1), model.getUv(face, 2), 
+						textureId
+					);
+				Face f2 = new Face(
+						model.getPosition(face, 0), model.getPosition(face, 2), model.getPosition(face, 3), 
+						model.getNormal(face, 1), model.getNormal(face, 1), model.getNormal(face, 1), 
+						model.getUv(face, 0), model.getUv(face, 2), model.getUv(face, 3), 
+						textureId
+					);
+				
+				template.addFace(new TemplateFace(model, face, f1, f2));
 			}
-			
-			model.translate(translation);
-			
 		}
 		
-		//scale down
-		model.transform(Matrix3f.createScaling(1f / 16f));
-		
-		return model;
+		return template;
 	}
 	
-	private void createElementFace(BlockStateModel model, BlockModelElementFaceResource face, Direction faceDir, Vector3f c0, Vector3f c1, Vector3f c2, Vector3f c3) throws NoSuchTextureException {
-		if (face == null) return;
-		BlockModelResource m = face.getElement().getModel(); 
+	/**
+	 * Copies the triangles of a template-face, lights and tints them for this context and adds them to the model
+	 */
+	private void createFace(BlockStateModel model, TemplateFace templateFace) {
+		CompiledBlockModel m = templateFace.getModel();
+		int face = templateFace.getFace();
 		
-		//face culling
-		if (face.isCullface()){
-			Block b = getRotationRelativeBlock(m, face.getCullface());
-			if (b.isCullingNeighborFaces()) return;
-		}
-
 		//light calculation
-		Block b = getRotationRelativeBlock(m, faceDir);
-		BlockContext bContext = context.getRelativeView(getRotationRelativeDirectionVector(m, faceDir.toVector().toFloat()).toInt());
-		float skyLight = b.getPassedSunLight(bContext);
+		//(the block-cache of the light is only used if the view is positioned at the block, since blocks can be shared between contexts)
+		Vector3i lightBlockOffset = m.getLightBlockOffset(face);
+		Vector3i lightViewOffset = m.getLightViewOffset(face);
+		boolean lightCached = lightBlockOffset.equals(lightViewOffset);
+		Block b = context.getRelativeBlock(lightBlockOffset);
+		BlockContext bContext = context.getRelativeView(lightViewOffset);
+		float skyLight = lightCached ? b.getPassedSunLight(bContext) : b.calculatePassedSunLight(bContext);
 		
 		//filter out faces that are not skylighted
 		if (skyLight == 0f && renderSettings.isExcludeFacesWithoutSunlight()) return;
 
 		float light = 1;
 		if (renderSettings.isLighting()) {
-			float blockLight = b.getPassedBlockLight(bContext);
+			float blockLight = lightCached ? b.getPassedBlockLight(bContext) : b.calculatePassedBlockLight(bContext);
 			light = Math.max(skyLight, blockLight) / 15f;
 			if (light > 1) light = 1;
 		}
-
-		//UV
-		Vector4f uv = face.getUv().toFloat().div(16);
-		
-		//UV-Lock counter-rotation
-		int uvLockAngle = 0;
-		if (m.isUvLock()){
-			Quaternionf rot = Quaternionf.fromAxesAnglesDeg(m.getXRot(), m.getYRot(), 0);
-			uvLockAngle = (int) rot.getAxesAnglesDeg().dot(faceDir.toVector().toFloat());
-			
-			//TODO: my math has stopped working, there has to be a more consistent solution
-			if (m.getXRot() >= 180 && m.getYRot() != 90 && m.getYRot() != 270) uvLockAngle += 180;
-		}
-
-		//create both triangles
-		Vector2f[] uvs = new Vector2f[4];
-		uvs[0] = new Vector2f(uv.getX(), uv.getW());
-		uvs[1] = new Vector2f(uv.getZ(), uv.getW());
-		uvs[2] = new Vector2f(uv.getZ(), uv.getY());
-		uvs[3] = new Vector2f(uv.getX(), uv.getY());
-		
-		//face texture rotation
-		uvs = rotateUVOuter(uvs, uvLockAngle);
-		uvs = rotateUVInner(uvs, face.getRotation());
-		
-		String textureName = face.getResolvedTexture();
-		if (textureName == null) throw new NoSuchTextureException("There is no Texture-Definition for a face: " + faceDir + " of block: " + resource.getBlock());
 		
-		int textureId = resourcePack.getTextureProvider().getTextureIndex(textureName);
-		
-		Face f1 = new Face(c0, c1, c2, uvs[0], uvs[1], uvs[2], textureId);
-		Face f2 = new Face(c0, c2, c3, uvs[0], uvs[2], uvs[3], textureId);
+		Face f1 = new Face(templateFace.getF1());
+		Face f2 = new Face(templateFace.getF2());
 		
 		//calculate ao
 		double ao0 = 1d, ao1 = 1d, ao2 = 1d, ao3 = 1d;
 		if (renderSettings.isAmbientOcclusion() && m.isAmbientOcclusion()){
-			ao0 = testAo(m, c0, faceDir);
-			ao1 = testAo(m, c1, faceDir);
-			ao2 = testAo(m, c2, faceDir);
-			ao3 = testAo(m, c3, faceDir);
+			if (occludingNeighbours == -1) occludingNeighbours = context.getOccludingNeighbourMask();
+			
+			ao0 = testAo(m, face, 0);
+			ao1 = testAo(m, face, 1);
+			ao2 = testAo(m, face, 2);
+			ao3 = testAo(m, face, 3);
 		}
 		
 		//tint the face
 		Vector3f color = Vector3f.ONE;
-		if (face.isTinted()){
+		if (m.isTinted(face)){
 			color = resourcePack.getBlockColorProvider().getBlockColor(context);
 		}
 	
@@ -250,20 +260,9 @@ private void createElementFace(BlockStateModel model, BlockModelElementFaceResou
 		model.addFace(f2);
 		
 		//if is top face set model-color
-		Vector3f dir = getRotationRelativeDirectionVector(m, faceDir.toVector().toFloat());
-
-		BlockModelElementResource bmer = face.getElement();
-		if (bmer.isRotation()){
-			Quaternionf rot = Quaternionf.fromAngleDegAxis(
-					bmer.getRotationAngle(),
-					bmer.getRotationAxis().toVector().toFloat()
-				);
-			dir = rot.rotate(dir);
-		}
-		
-		float a = dir.getY();
+		float a = m.getMapColorFactor(face);
 		if (a > 0){
-			Texture t = resourcePack.getTextureProvider().getTexture(textureId);
+			Texture t = resourcePack.getTextureProvider().getTexture(f1.getMaterialIndex());
 			if (t != null){
 				Vector4f c = t.getColor();
 				c = c.mul(color.toVector4(1f));
@@ -274,112 +273,18 @@ private void createElementFace(BlockStateModel model, BlockModelElementFaceResou
 		
 	}
 	
-	private Block getRotationRelativeBlock(BlockModelResource model, Direction direction){
-		return getRotationRelativeBlock(model, direction.toVector());
-	}
-	
-	private Block getRotationRelativeBlock(BlockModelResource model, Vector3i direction){
-		Vector3i dir = getRotationRelativeDirectionVector(model, direction.toFloat()).round().toInt();
-		return context.getRelativeBlock(dir);
-	}
-	
-	private Vector3f getRotationRelativeDirectionVector(BlockModelResource model, Vector3f direction){
-		Quaternionf rot = Quaternionf.fromAxesAnglesDeg(
-				-model.getXRot(),
-				-model.getYRot(),
-				0
-			);
-		Vector3f dir = rot.rotate(direction);
-		return dir;
-	}
-	
-	private double testAo(BlockModelResource model, Vector3f vertex, Direction dir){
+	/**
+	 * Counts the occluding neighbour-samples of the corner in the occluding-neighbour-mask of the context
+	 */
+	private double testAo(CompiledBlockModel model, int face, int corner){
 		int occluding = 0;
 		
-		int x = 0;
-		if (vertex.getX() == 16){
-			x = 1;
-		} else if (vertex.getX() == 0){
-			x = -1;
-		}
-		
-		int y = 0;
-		if (vertex.getY() == 16){
-			y = 1;
-		} else if (vertex.getY() == 0){
-			y = -1;
-		}
-		
-		int z = 0;
-		if (vertex.getZ() == 16){
-			z = 1;
-		} else if (vertex.getZ() == 0){
-			z = -1;
-		}
-
-		Vector3i rel = new Vector3i(x, y, 0);
-		if (rel.dot(dir.toVector()) > 0){
-			if (getRotationRelativeBlock(model, rel).isOccludingNeighborFaces()) occluding++;
-		}
-		
-		rel = new Vector3i(x, 0, z);
-		if (rel.dot(dir.toVector()) > 0){
-			if (getRotationRelativeBlock(model, rel).isOccludingNeighborFaces()) occluding++;
-		}
-		
-		rel = new Vector3i(0, y, z);
-		if (rel.dot(dir.toVector()) > 0){
-			if (getRotationRelativeBlock(model, rel).isOccludingNeighborFaces()) occluding++;
-		}
-		
-		rel = new Vector3i(x, y, z);
-		if (rel.dot(dir.toVector()) > 0){
-			if (getRotationRelativeBlock(model, rel).isOccludingNeighborFaces()) occluding++;
-		}
-		
-		if (occluding > 3)
-		occluding = 3;
-		
-		return Math.max(0.0, Math.min(1.0 - ((double) occluding * 0.25), 1.0));
-	}
-	
-	private Vector2f[] rotateUVInner(Vector2f[] uv, int angle){
-		if (uv.length == 0) return uv;
-		
-		int steps = getRotationSteps(angle); 
-		
-		for (int i = 0; i < steps; i++){
-			Vector2f first = uv[uv.length - 1];
-			System.arraycopy(uv, 0, uv, 1, uv.length - 1);
-			uv[0] = first;
+		int count = model.getAoSampleCount(face, corner);
+		for (int i = 0; i < count; i++){
+			occluding += (occludingNeighbours >>> model.getAoSampleBit(face, corner, i)) & 1;
 		}
 		
-		return uv;
-	}
-	
-	private Vector2f[] rotateUVOuter(Vector2f[] uv, float angle){
-		angle %= 360;
-		if (angle < 0) angle += 360;
-		
-		if (angle == 0) return uv;
-		
-		Complexf c = Complexf.fromAngleDeg(angle);
-		
-		for (int i = 0; i < uv.length; i++){
-			uv[i] = uv[i].sub(HALF_2F);
-			uv[i] = c.rotate(uv[i]);
-			uv[i] = uv[i].add(HALF_2F);
-		}
-		
-		return uv;
-	}
-	
-	private int getRotationSteps(int angle){
-		angle = -Math.floorDiv(angle, 90);
-		angle %= 4;
-		if (angle < 0) angle += 4;
-		
-		return angle;
+		return AO_LIGHT[Math.min(occluding, 3)];
 	}
 	
 }
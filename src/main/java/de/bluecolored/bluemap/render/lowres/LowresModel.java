@@ -34,7 +34,6 @@
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPOutputStream;
 
@@ -54,7 +53,7 @@ public class LowresModel {
 	
 	private Map<Vector2i, LowresPoint> changes;
 	
-	private boolean hasUnsavedChanges;
+	private volatile boolean hasUnsavedChanges;
 	
 	private final Object 
 		fileLock = new Object(), 
@@ -73,7 +72,7 @@ public LowresModel(UUID world, Vector2i tilePos, BufferGeometry model) {
 		this.tilePos = tilePos;
 		this.model = model;
 		
-		this.changes = new ConcurrentHashMap<>();
+		this.changes = new HashMap<>();
 		
 		this.hasUnsavedChanges = true;
 	}
@@ -87,8 +86,20 @@ public LowresModel(UUID world, Vector2i tilePos, BufferGeometry model) {
 	 * </i>
 	 */
 	public void update(Vector2i point, float height, Vector3f color){
-		changes.put(point, new LowresPoint(height, color));
-		this.hasUnsavedChanges = true;
+		synchronized (modelLock) {
+			changes.put(point, new LowresPoint(height, color));
+			this.hasUnsavedChanges = true;
+		}
+	}
+	
+	/**
+	 * Changes the height and color of all given points at once, see {@link #update(Vector2i, float, Vector3f)}
+	 */
+	public void update(Map<Vector2i, LowresPoint> points){
+		synchronized (modelLock) {
+			changes.putAll(points);
+			this.hasUnsavedChanges = true;
+		}
 	}
 	
 	/**
@@ -131,8 +142,6 @@ public void save(File file, boolean force) throws IOException {
 	}
 	
 	public void flush(){
-		if (changes.isEmpty()) return;
-
 		synchronized (modelLock) {
 			if (changes.isEmpty()) return;
 			
@@ -204,7 +213,7 @@ public boolean equals(Object obj) {
 	/**
 	 * a point on this lowres-model-grid
 	 */
-	public class LowresPoint {
+	public static class LowresPoint {
 		private float height;
 		private Vector3f color;
 		
@@ -30,6 +30,7 @@
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -46,12 +47,29 @@
 
 import de.bluecolored.bluemap.logger.Logger;
 import de.bluecolored.bluemap.render.hires.HiresModel;
+import de.bluecolored.bluemap.render.lowres.LowresModel.LowresPoint;
 import de.bluecolored.bluemap.threejs.BufferGeometry;
 import de.bluecolored.bluemap.util.FileUtil;
 import de.bluecolored.bluemap.util.MathUtil;
 
+/**
+ * Manages the lowres-models of a map and renders hires-models onto them.<br>
+ * <br>
+ * <i>
+ * Implementation note:<br>
+ * The points of rendered hires-models are collected in a batch that is keyed by lowres-tile, 
+ * and the batch is applied when it contains the points of a few hires-models (or it got old).
+ * So each lowres-model is looked up and locked only once per batch instead of once per point, 
+ * which matters because the hires-tiles of one lowres-tile are usually rendered shortly after another.<br>
+ * A batch is taken and applied while holding the apply-lock, so the batches are applied in the order they were collected
+ * (newer points of a tile that was rendered again are never overwritten by older ones), and {@link #save()} waits for batches that are being applied.
+ * </i>
+ */
 public class LowresModelManager {
 	
+	private static final int BATCH_MAX_HIRES_MODELS = 16;
+	private static final long BATCH_MAX_AGE = 1000; //ms
+	
 	private Path fileRoot;
 	private Logger logger;
 	
@@ -60,6 +78,10 @@ public class LowresModelManager {
 	
 	private Map<File, CachedModel> models;
 	
+	private final Object applyLock = new Object(); //always taken before the lock of this manager and the batch-lock
+	private final Object batchLock = new Object();
+	private UpdateBatch batch;
+	
 	public LowresModelManager(Path fileRoot, Vector2i gridSize, Vector2i pointsPerHiresTile) {
 		this(fileRoot, gridSize, pointsPerHiresTile, Logger.stdOut());
 	}
@@ -72,12 +94,18 @@ public LowresModelManager(Path fileRoot, Vector2i gridSize, Vector2i pointsPerHi
 		this.pointsPerHiresTile = pointsPerHiresTile;
 		
 		models = new ConcurrentHashMap<>();
+		
+		batch = null;
 	}
 	
 	/**
-	 * Renders all points from the given highres-model onto the lowres-grid
+	 * Renders all points from the given highres-model onto the lowres-grid.<br>
+	 * The changes might be collected with changes of other hires-models first, 
+	 * they are applied to the lowres-models at the latest with the next {@link #flushUpdates()} or {@link #save()}.
 	 */
 	public void render(HiresModel hiresModel) throws IOException {
+		UpdateBatch modelBatch = new UpdateBatch();
+		
 		Vector3i min = hiresModel.getBlockMin();
 		Vector3i max = hiresModel.getBlockMax();
 		Vector3i size = max.sub(min).add(Vector3i.ONE);
@@ -116,51 +144,88 @@ public void render(HiresModel hiresModel) throws IOException {
 				height /= count;
 				
 				Vector2i point = pointMin.add(tx, tz);
-				update(hiresModel.getWorld(), point, (float) height, color.toVector3());
+				modelBatch.add(hiresModel.getWorld(), point, (float) height, color.toVector3());
 				
 			}
 		}
+		
+		boolean full;
+		synchronized (batchLock) {
+			if (batch == null) {
+				batch = modelBatch;
+			} else {
+				batch.addAll(modelBatch);
+			}
+			
+			batch.hiresModelCount++;
+			full = batch.hiresModelCount >= BATCH_MAX_HIRES_MODELS || System.currentTimeMillis() - batch.createdTime > BATCH_MAX_AGE;
+		}
+		
+		if (full) flushUpdates();
 	}
 	
 	/**
-	 * Saves all unsaved changes to the models to disk
+	 * Applies all collected changes to the lowres-models
 	 */
-	public synchronized void save(){
-		for (CachedModel model : models.values()){
-			saveModel(model);
+	public void flushUpdates() throws IOException {
+		synchronized (applyLock) {
+			UpdateBatch pendingBatch;
+			synchronized (batchLock) {
+				pendingBatch = batch;
+				batch = null;
+			}
+			
+			if (pendingBatch != null) apply(pendingBatch);
 		}
+	}
+	
+	private void apply(UpdateBatch batch) throws IOException {
+		IOException exception = null;
 		
-		tidyUpModelCache();
+		for (Entry<ModelKey, Map<Vector2i, LowresPoint>> entry : batch.points.entrySet()) {
+			try {
+				LowresModel model = getModel(entry.getKey().world, entry.getKey().tile);
+				model.update(entry.getValue());
+			} catch (IOException ex) {
+				//still apply the changes to the other models
+				if (exception == null) exception = ex;
+				else exception.addSuppressed(ex);
+			}
+		}
+		
+		if (exception != null) throw exception;
+	}
+	
+	/**
+	 * Saves all unsaved changes to the models to disk
+	 */
+	public void save(){
+		synchronized (applyLock) {
+			synchronized (this) {
+				try {
+					flushUpdates();
+				} catch (IOException ex) {
+					logger.logError("Failed to apply changes to lowres-models", ex);
+				}
+				
+				for (CachedModel model : models.values()){
+					saveModel(model);
+				}
+				
+				tidyUpModelCache();
+			}
+		}
 	}
 	
 	/**
 	 * Updates a point on the lowresmodel-grid
 	 */
 	public void update(UUID world, Vector2i point, float height, Vector3f color) throws IOException {
-		Vector2i tile = pointToTile(point);
-		Vector2i relPoint = getPointRelativeToTile(tile, point);
-		LowresModel model = getModel(world, tile);
-		model.update(relPoint, height, color);
-		
-		if (relPoint.getX() == 0){
-			Vector2i tile2 = tile.add(-1, 0);
-			Vector2i relPoint2 = getPointRelativeToTile(tile2, point);
-			LowresModel model2 = getModel(world, tile2);
-			model2.update(relPoint2, height, color);
-		}
-		
-		if (relPoint.getY() == 0){
-			Vector2i tile2 = tile.add(0, -1);
-			Vector2i relPoint2 = getPointRelativeToTile(tile2, point);
-			LowresModel model2 = getModel(world, tile2);
-			model2.update(relPoint2, height, color);
-		}
+		UpdateBatch pointBatch = new UpdateBatch();
+		pointBatch.add(world, point, height, color);
 		
-		if (relPoint.getX() == 0 && relPoint.getY() == 0){
-			Vector2i tile2 = tile.add(-1, -1);
-			Vector2i relPoint2 = getPointRelativeToTile(tile2, point);
-			LowresModel model2 = getModel(world, tile2);
-			model2.update(relPoint2, height, color);
+		synchronized (applyLock) {
+			apply(pointBatch);
 		}
 	}
 
@@ -281,6 +346,88 @@ public Vector2i getPointsPerHiresTile() {
 		return pointsPerHiresTile;
 	}
 	
+	/**
+	 * Changed points, grouped by the lowres-model they belong to
+	 */
+	private class UpdateBatch {
+		
+		private Map<ModelKey, Map<Vector2i, LowresPoint>> points;
+		private int hiresModelCount;
+		private long createdTime;
+		
+		public UpdateBatch() {
+			this.points = new HashMap<>();
+			this.hiresModelCount = 0;
+			this.createdTime = System.currentTimeMillis();
+		}
+		
+		/**
+		 * Adds a point on the lowresmodel-grid, points on the edge of a model are also added to the neighbouring models that share that point
+		 */
+		public void add(UUID world, Vector2i point, float height, Vector3f color) {
+			LowresPoint lowresPoint = new LowresPoint(height, color);
+			
+			Vector2i tile = pointToTile(point);
+			Vector2i relPoint = getPointRelativeToTile(tile, point);
+			add(world, tile, relPoint, lowresPoint);
+			
+			if (relPoint.getX() == 0){
+				Vector2i tile2 = tile.add(-1, 0);
+				add(world, tile2, getPointRelativeToTile(tile2, point), lowresPoint);
+			}
+			
+			if (relPoint.getY() == 0){
+				Vector2i tile2 = tile.add(0, -1);
+				add(world, tile2, getPointRelativeToTile(tile2, point), lowresPoint);
+			}
+			
+			if (relPoint.getX() == 0 && relPoint.getY() == 0){
+				Vector2i tile2 = tile.add(-1, -1);
+				add(world, tile2, getPointRelativeToTile(tile2, point), lowresPoint);
+			}
+		}
+		
+		private void add(UUID world, Vector2i tile, Vector2i relPoint, LowresPoint lowresPoint) {
+			points.computeIfAbsent(new ModelKey(world, tile), k -> new HashMap<>()).put(relPoint, lowresPoint);
+		}
+		
+		/**
+		 * Adds all points of the other batch, replacing points of this batch
+		 */
+		public void addAll(UpdateBatch other) {
+			for (Entry<ModelKey, Map<Vector2i, LowresPoint>> entry : other.points.entrySet()) {
+				Map<Vector2i, LowresPoint> modelPoints = points.get(entry.getKey());
+				if (modelPoints == null) points.put(entry.getKey(), entry.getValue());
+				else modelPoints.putAll(entry.getValue());
+			}
+		}
+		
+	}
+	
+	private static class ModelKey {
+		
+		private final UUID world;
+		private final Vector2i tile;
+		
+		public ModelKey(UUID world, Vector2i tile) {
+			this.world = world;
+			this.tile = tile;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ModelKey)) return false;
+			ModelKey that = (ModelKey) obj;
+			return this.tile.equals(that.tile) && this.world.equals(that.world);
+		}
+		
+		@Override
+		public int hashCode() {
+			return world.hashCode() * 31 + tile.hashCode();
+		}
+		
+	}
+	
 	private class CachedModel extends LowresModel {
 
 		private long cacheTime;
@@ -28,6 +28,7 @@
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -40,7 +41,7 @@
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector3f;
 
-import de.bluecolored.bluemap.api.Block;
+import de.bluecolored.bluemap.api.BiomeRegistry;
 import de.bluecolored.bluemap.render.context.ExtendedBlockContext;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.gson.GsonConfigurationLoader;
@@ -51,6 +52,7 @@ public class BlockColorProvider {
 	private BufferedImage grassMap;
 	private Map<String, BiomeInfo> biomeInfos;
 	private Map<String, String> blockColors;
+	private volatile BiomeColors[] biomeColors;
 	
 	public BlockColorProvider(ResourcePack resourcePack) throws IOException, NoSuchResourceException {
 		
@@ -73,6 +75,7 @@ public BlockColorProvider(ResourcePack resourcePack) throws IOException, NoSuchR
 			biomeInfos.put(key, value);
 		}
 		
+		this.biomeColors = new BiomeColors[0];
 		this.blockColors = new ConcurrentHashMap<>();
 		loader = GsonConfigurationLoader.builder()
 				.setURL(getClass().getResource("/blockColors.json"))
@@ -88,8 +91,7 @@ public BlockColorProvider(ResourcePack resourcePack) throws IOException, NoSuchR
 	}
 	
 	public Vector3f getBlockColor(ExtendedBlockContext context){
-		Block block = context.getRelativeBlock(0, 0, 0);
-		String blockId = block.getBlockState().getResourceId();
+		String blockId = context.getRelativeBlockState(0, 0, 0).getResourceId();
 		String colorDef = blockColors.get(blockId);
 		
 		if (colorDef == null) colorDef = blockColors.get("default");
@@ -118,30 +120,34 @@ else if (colorDef.equals("#foliage")){
 		return color;
 	}
 	
+	private int getBlocksAboveSeaLevel(ExtendedBlockContext context){
+		return Math.max(context.getPosition().getY() - context.getRelativeBlock(0, 0, 0).getWorld().getSeaLevel(), 0);
+	}
+	
 	private Vector3f getBiomeFoliageAverageColor(ExtendedBlockContext context){
 		Vector3f color = Vector3f.ZERO;
+		int blocksAboveSeaLevel = getBlocksAboveSeaLevel(context);
 		
 		for (int x = -1; x <= 1; x++){
 			for (int z = -1; z <= 1; z++){
-				color = color.add(getBiomeFoliageColor(context.getRelativeBlock(x, 0, z)));
+				color = color.add(getBiomeFoliageColor(getBiomeColors(context.getRelativeBiomeId(x, 0, z)), blocksAboveSeaLevel));
 			}
 		}
 		
 		return color.div(9f);
 	}
 	
-	private Vector3f getBiomeFoliageColor(Block block){
+	private Vector3f getBiomeFoliageColor(BiomeColors biome, int blocksAboveSeaLevel){
 		Vector3f color = Vector3f.ONE;
 
-		if (block.getBiome().contains("mesa")){
+		if (biome.mesa){
 			return colorFromInt(0x9e814d);
 		}
 		
-		int blocksAboveSeaLevel = Math.max(block.getPosition().getY() - block.getWorld().getSeaLevel(), 0);
-		color = getFoliageColor(block.getBiome(), blocksAboveSeaLevel);
+		color = getColorFromMap(biome.biomeId, biome.info, blocksAboveSeaLevel, foliageMap);
 
 		//improvised to match the original better
-		if (block.getBiome().contains("roofed_forest")){
+		if (biome.roofedForest){
 			color = color.mul(2f).add(colorFromInt(0x28340a)).div(3f);
 		}
 		
@@ -150,33 +156,55 @@ private Vector3f getBiomeFoliageColor(Block block){
 	
 	private Vector3f getBiomeGrassAverageColor(ExtendedBlockContext context){
 		Vector3f color = Vector3f.ZERO;
+		int blocksAboveSeaLevel = getBlocksAboveSeaLevel(context);
 		
 		for (int x = -1; x <= 1; x++){
 			for (int z = -1; z <= 1; z++){
-				color = color.add(getBiomeGrassColor(context.getRelativeBlock(x, 0, z)));
+				color = color.add(getBiomeGrassColor(getBiomeColors(context.getRelativeBiomeId(x, 0, z)), blocksAboveSeaLevel));
 			}
 		}
 		
 		return color.div(9f);
 	}
 	
-	private Vector3f getBiomeGrassColor(Block block){
+	private Vector3f getBiomeGrassColor(BiomeColors biome, int blocksAboveSeaLevel){
 		Vector3f color = Vector3f.ONE;
 		
-		if (block.getBiome().contains("mesa")){
+		if (biome.mesa){
 			return colorFromInt(0x90814d);
 		}
 		
-		int blocksAboveSeaLevel = Math.max(block.getPosition().getY() - block.getWorld().getSeaLevel(), 0);
-		color = getGrassColor(block.getBiome(), blocksAboveSeaLevel);
+		color = getColorFromMap(biome.biomeId, biome.info, blocksAboveSeaLevel, grassMap);
 
-		if (block.getBiome().contains("roofed_forest")){
+		if (biome.roofedForest){
 			color = color.add(colorFromInt(0x28340a)).div(2f);
 		}
 		
 		return color;
 	}
 	
+	/**
+	 * Returns the resolved color-infos of the biome with this biome-id (see {@link BiomeRegistry})
+	 */
+	private BiomeColors getBiomeColors(int biomeId){
+		BiomeColors[] colors = biomeColors;
+		if (biomeId < colors.length && colors[biomeId] != null) return colors[biomeId];
+		
+		return registerBiomeColors(biomeId);
+	}
+	
+	private synchronized BiomeColors registerBiomeColors(int biomeId){
+		BiomeColors[] colors = biomeColors;
+		if (biomeId < colors.length && colors[biomeId] != null) return colors[biomeId];
+		
+		//copy on write, so the array is published with the volatile field
+		colors = Arrays.copyOf(colors, Math.max(colors.length, biomeId + 1));
+		colors[biomeId] = new BiomeColors(BiomeRegistry.getBiome(biomeId));
+		biomeColors = colors;
+		
+		return colors[biomeId];
+	}
+	
 	private Vector3f colorFromInt(int cValue){
 		Color c = new Color(cValue, false);
 		return new Vector3f(c.getRed(), c.getGreen(), c.getBlue()).div(0xff);
@@ -191,16 +219,18 @@ public Vector3f getGrassColor(String biomeId, int blocksAboveSeaLevel){
 	}
 	
 	private Vector3f getColorFromMap(String biomeId, int blocksAboveSeaLevel, BufferedImage map){
-		Vector2i pixel = getColorMapPosition(biomeId, blocksAboveSeaLevel).mul(map.getWidth(), map.getHeight()).floor().toInt();
+		return getColorFromMap(biomeId, biomeInfos.get(biomeId), blocksAboveSeaLevel, map);
+	}
+	
+	private Vector3f getColorFromMap(String biomeId, BiomeInfo bi, int blocksAboveSeaLevel, BufferedImage map){
+		Vector2i pixel = getColorMapPosition(biomeId, bi, blocksAboveSeaLevel).mul(map.getWidth(), map.getHeight()).floor().toInt();
 		int cValue = map.getRGB(GenericMath.clamp(pixel.getX(), 0, map.getWidth() - 1), GenericMath.clamp(pixel.getY(), 0, map.getHeight() - 1));
 		Color color = new Color(cValue, false);
 		return new Vector3f(color.getRed(), color.getGreen(), color.getBlue()).div(0xff);
 		
 	}
 	
-	private Vector2f getColorMapPosition(String biomeId, int blocksAboveSeaLevel){
-		BiomeInfo bi = biomeInfos.get(biomeId);
-		
+	private Vector2f getColorMapPosition(String biomeId, BiomeInfo bi, int blocksAboveSeaLevel){
 		if (bi == null){
 			throw new NoSuchElementException("No biome found with id: " + biomeId);
 		}
@@ -214,4 +244,21 @@ class BiomeInfo {
 		float humidity;
 		float temp;
 	}
+	
+	/**
+	 * Everything that is needed to color a biome, resolved once per biome-id instead of on every lookup
+	 */
+	private class BiomeColors {
+		final String biomeId;
+		final BiomeInfo info;
+		final boolean mesa;
+		final boolean roofedForest;
+		
+		BiomeColors(String biomeId) {
+			this.biomeId = biomeId;
+			this.info = biomeInfos.get(biomeId);
+			this.mesa = biomeId.contains("mesa");
+			this.roofedForest = biomeId.contains("roofed_forest");
+		}
+	}
 }
@@ -51,6 +51,7 @@ public class BlockModelResource {
 	private boolean ambientOcclusion;
 	private Collection<BlockModelElementResource> elements;
 	private Map<String, String> textures;
+	private CompiledBlockModel compiledModel;
 	
 	protected BlockModelResource(BlockStateResource blockState, ConfigurationNode declaration, ResourcePack resources) throws InvalidResourceDeclarationException {
 		this.blockState = blockState;
@@ -67,6 +68,8 @@ protected BlockModelResource(BlockStateResource blockState, ConfigurationNode de
 		} catch (IOException e) {
 			throw new InvalidResourceDeclarationException("Model not found: " + declaration.getNode("model").getString(), e);
 		}
+		
+		this.compiledModel = CompiledBlockModel.compile(this, resources.getTextureProvider());
 	}
 	
 	private void loadModelResource(String modelId, ResourcePack resources) throws IOException, InvalidResourceDeclarationException {
@@ -123,6 +126,13 @@ public Collection<BlockModelElementResource> getElements() {
 		return Collections.unmodifiableCollection(elements);
 	}
 	
+	/**
+	 * Returns the geometry of this model compiled into flat arrays, see {@link CompiledBlockModel}
+	 */
+	public CompiledBlockModel getCompiledModel() {
+		return compiledModel;
+	}
+	
 	public String resolveTexture(String key){
 		if (key == null) return null;
 		if (!key.startsWith("#")) return key;
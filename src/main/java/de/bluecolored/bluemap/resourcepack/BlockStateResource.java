@@ -47,6 +47,7 @@
 public class BlockStateResource {
 	private BlockState block;
 	private Collection<WeighedArrayList<BlockModelResource>> modelResources; 
+	private CullShape cullShape;
 	
 	protected BlockStateResource(BlockState block, ResourcePack resources) throws NoSuchResourceException, InvalidResourceDeclarationException {
 		this.block = Preconditions.checkNotNull(block);
@@ -66,6 +67,26 @@ protected BlockStateResource(BlockState block, ResourcePack resources) throws No
 		}
 		
 		this.modelResources = Collections.unmodifiableCollection(this.modelResources);
+		this.cullShape = calculateCullShape();
+	}
+	
+	/**
+	 * The parts of the block that are covered in all variants: the union of all parts, each part is the intersection of its alternative models.
+	 */
+	private CullShape calculateCullShape() {
+		CullShape shape = CullShape.EMPTY;
+		
+		for (WeighedArrayList<BlockModelResource> models : modelResources) {
+			CullShape partShape = null;
+			for (BlockModelResource model : models) {
+				CullShape modelShape = model.getCompiledModel().getCullShape();
+				partShape = partShape == null ? modelShape : partShape.intersection(modelShape);
+			}
+			
+			if (partShape != null) shape = shape.union(partShape);
+		}
+		
+		return shape;
 	}
 	
 	private void load(ConfigurationNode data, ResourcePack resources) throws InvalidResourceDeclarationException {
@@ -147,6 +168,13 @@ public Collection<WeighedArrayList<BlockModelResource>> getModelResources(){
 		return modelResources;
 	}
 	
+	/**
+	 * Returns the parts of the sides of this block that are covered by opaque faces, no matter which model-variant is chosen
+	 */
+	public CullShape getCullShape(){
+		return cullShape;
+	}
+	
 	private Path getResourcePath(){
 		return Paths.get("assets",  "minecraft", "blockstates", block.getResourceId() + ".json");
 	}
@@ -0,0 +1,542 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.resourcepack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.flowpowered.math.TrigMath;
+import com.flowpowered.math.imaginary.Complexf;
+import com.flowpowered.math.imaginary.Quaternionf;
+import com.flowpowered.math.matrix.Matrix3f;
+import com.flowpowered.math.vector.Vector2f;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+import com.flowpowered.math.vector.Vector4f;
+
+import de.bluecolored.bluemap.model.Face;
+import de.bluecolored.bluemap.model.Model;
+import de.bluecolored.bluemap.render.context.ExtendedBlockContext;
+import de.bluecolored.bluemap.util.Direction;
+
+/**
+ * The geometry of a {@link BlockModelResource} (including its x/y rotation), compiled into flat arrays when the resource is loaded.<br>
+ * All element-rotations, rescaling, uv-rotations/uv-locks and the scaling to block-size are already applied, 
+ * so a model-builder only needs to cull, light and tint the faces.<br>
+ * <br>
+ * Each face of a model-element is a quad made from two triangles: (corner 0, 1, 2) and (corner 0, 2, 3).<br>
+ * All directions and offsets to neighbour-blocks are already rotated with the model.
+ */
+public class CompiledBlockModel {
+	
+	private static final Vector3f HALF_3F = Vector3f.ONE.mul(0.5);
+	private static final Vector3f NEG_HALF_3F = HALF_3F.negate();
+	private static final Vector2f HALF_2F = Vector2f.ONE.mul(0.5);
+	
+	private static final int AO_SAMPLES = 4; //max neighbours that can occlude a corner
+	
+	private final boolean ambientOcclusion;
+	private final int faceCount;
+	
+	private final float[] positions; //face * 4 corners * 3
+	private final float[] normals; //face * 2 triangles * 3
+	private final float[] uvs; //face * 4 corners * 2
+	
+	private final int[] textureIds; //-1 if there is no such texture
+	private final String[] textures;
+	private final Direction[] directions; //not rotated with the model, only for error-messages
+	private final boolean[] tinted;
+	private final float[] mapColorFactors;
+	
+	private final Direction[] cullDirections; //null if the face is not culled
+	private final boolean[] onCullSide; //true if the face lies flat on the side of its cull-direction
+	private final long[] cullSideMasks; //face * CullShape.SIDE_LENGTH, the squares of the cull-side that the face touches
+	private final CullShape cullShape;
+	private final Vector3i[] lightBlockOffsets;
+	private final Vector3i[] lightViewOffsets;
+	private final byte[] aoSampleBits; //face * 4 corners * AO_SAMPLES
+	private final byte[] aoSampleCounts; //face * 4 corners
+	
+	private CompiledBlockModel(BlockModelResource model, List<CompiledFace> faces) {
+		this.ambientOcclusion = model.isAmbientOcclusion();
+		this.faceCount = faces.size();
+		
+		this.positions = new float[faceCount * 4 * 3];
+		this.normals = new float[faceCount * 2 * 3];
+		this.uvs = new float[faceCount * 4 * 2];
+		
+		this.textureIds = new int[faceCount];
+		this.textures = new String[faceCount];
+		this.directions = new Direction[faceCount];
+		this.tinted = new boolean[faceCount];
+		this.mapColorFactors = new float[faceCount];
+		
+		this.cullDirections = new Direction[faceCount];
+		this.onCullSide = new boolean[faceCount];
+		this.cullSideMasks = new long[faceCount * CullShape.SIDE_LENGTH];
+		this.lightBlockOffsets = new Vector3i[faceCount];
+		this.lightViewOffsets = new Vector3i[faceCount];
+		this.aoSampleBits = new byte[faceCount * 4 * AO_SAMPLES];
+		this.aoSampleCounts = new byte[faceCount * 4];
+		
+		long[] shapeMasks = new long[Direction.values().length * CullShape.SIDE_LENGTH];
+		
+		for (int i = 0; i < faceCount; i++) {
+			CompiledFace face = faces.get(i);
+			
+			putVector(positions, (i * 4 + 0) * 3, face.f1.getP1());
+			putVector(positions, (i * 4 + 1) * 3, face.f1.getP2());
+			putVector(positions, (i * 4 + 2) * 3, face.f1.getP3());
+			putVector(positions, (i * 4 + 3) * 3, face.f2.getP3());
+			
+			putVector(normals, (i * 2 + 0) * 3, face.f1.getN1());
+			putVector(normals, (i * 2 + 1) * 3, face.f2.getN1());
+			
+			putVector(uvs, (i * 4 + 0) * 2, face.f1.getUv1());
+			putVector(uvs, (i * 4 + 1) * 2, face.f1.getUv2());
+			putVector(uvs, (i * 4 + 2) * 2, face.f1.getUv3());
+			putVector(uvs, (i * 4 + 3) * 2, face.f2.getUv3());
+			
+			textureIds[i] = face.textureId;
+			textures[i] = face.texture;
+			directions[i] = face.direction;
+			tinted[i] = face.tinted;
+			mapColorFactors[i] = face.mapColorFactor;
+			
+			cullDirections[i] = face.cullDirection;
+			lightBlockOffsets[i] = face.lightBlockOffset;
+			lightViewOffsets[i] = face.lightViewOffset;
+			for (int c = 0; c < 4; c++) {
+				List<Vector3i> offsets = face.aoOffsets.get(c);
+				aoSampleCounts[i * 4 + c] = (byte) offsets.size();
+				for (int s = 0; s < offsets.size(); s++) {
+					Vector3i offset = offsets.get(s);
+					aoSampleBits[(i * 4 + c) * AO_SAMPLES + s] = (byte) ((offset.getX() + 1) * 9 + (offset.getZ() + 1) * 3 + (offset.getY() + 1));
+				}
+			}
+			
+			//cull-shape
+			Vector3f c0 = face.f1.getP1(), c1 = face.f1.getP2(), c2 = face.f1.getP3(), c3 = face.f2.getP3();
+			Direction side = CullShape.getSide(c0, c1, c2, c3);
+			if (side != null) {
+				if (side == face.cullDirection) {
+					onCullSide[i] = true;
+					CullShape.addTouched(cullSideMasks, i * CullShape.SIDE_LENGTH, side, c0, c1, c2, c3);
+				}
+				
+				//only opaque faces that are facing outwards hide the faces of the neighbour
+				boolean outwards = face.f1.getN1().dot(side.toVector().toFloat()) > 0.5f;
+				if (face.opaque && outwards) {
+					CullShape.addCovered(shapeMasks, side.ordinal() * CullShape.SIDE_LENGTH, side, c0, c1, c2, c3);
+				}
+			}
+		}
+		
+		this.cullShape = CullShape.of(shapeMasks);
+	}
+	
+	private static void putVector(float[] array, int index, Vector3f v) {
+		array[index] = v.getX();
+		array[index + 1] = v.getY();
+		array[index + 2] = v.getZ();
+	}
+	
+	private static void putVector(float[] array, int index, Vector2f v) {
+		array[index] = v.getX();
+		array[index + 1] = v.getY();
+	}
+	
+	public boolean isAmbientOcclusion() {
+		return ambientOcclusion;
+	}
+	
+	public int getFaceCount() {
+		return faceCount;
+	}
+	
+	public Vector3f getPosition(int face, int corner) {
+		int i = (face * 4 + corner) * 3;
+		return new Vector3f(positions[i], positions[i + 1], positions[i + 2]);
+	}
+	
+	/**
+	 * Returns the (normalized) normal of the first (0) or second (1) triangle of the face
+	 */
+	public Vector3f getNormal(int face, int triangle) {
+		int i = (face * 2 + triangle) * 3;
+		return new Vector3f(normals[i], normals[i + 1], normals[i + 2]);
+	}
+	
+	public Vector2f getUv(int face, int corner) {
+		int i = (face * 4 + corner) * 2;
+		return new Vector2f(uvs[i], uvs[i + 1]);
+	}
+	
+	/**
+	 * Returns the index of the texture of the face
+	 * 
+	 * @throws NoSuchTextureException if the face has no texture-definition or there is no such texture
+	 */
+	public int getTextureId(int face) throws NoSuchTextureException {
+		int textureId = textureIds[face];
+		if (textureId >= 0) return textureId;
+		
+		if (textures[face] == null) throw new NoSuchTextureException("There is no Texture-Definition for a face: " + directions[face]);
+		throw new NoSuchTextureException("There is no texture with id: " + textures[face]);
+	}
+	
+	public boolean isTinted(int face) {
+		return tinted[face];
+	}
+	
+	/**
+	 * Returns the amount the face is facing upwards, the face contributes to the map-color if this is greater than zero
+	 */
+	public float getMapColorFactor(int face) {
+		return mapColorFactors[face];
+	}
+	
+	/**
+	 * Returns the direction of the neighbour that culls this face if it is culling neighbour-faces, or null if the face is never culled
+	 */
+	public Direction getCullDirection(int face) {
+		return cullDirections[face];
+	}
+	
+	/**
+	 * Returns the parts of the sides of the block that are covered by opaque faces of this model
+	 */
+	public CullShape getCullShape() {
+		return cullShape;
+	}
+	
+	/**
+	 * Returns true if the face is hidden by the given cull-shape of the neighbour in its cull-direction ({@link #getCullDirection(int)}).<br>
+	 * This is only the case if the face lies flat on that side of the block and the opposing side of the neighbour covers it completely.
+	 */
+	public boolean isHiddenBy(int face, CullShape neighbour) {
+		if (!onCullSide[face] || neighbour.isEmpty()) return false;
+		return neighbour.covers(cullDirections[face].opposite(), cullSideMasks, face * CullShape.SIDE_LENGTH);
+	}
+	
+	/**
+	 * Returns the offset of the block that this face passes its light from
+	 */
+	public Vector3i getLightBlockOffset(int face) {
+		return lightBlockOffsets[face];
+	}
+	
+	/**
+	 * Returns the offset of the block-context that is used to calculate the passed light of the {@link #getLightBlockOffset(int)} block
+	 */
+	public Vector3i getLightViewOffset(int face) {
+		return lightViewOffsets[face];
+	}
+	
+	/**
+	 * Returns the number of neighbour-blocks that can occlude the corner of the face (for ambient-occlusion)
+	 */
+	public int getAoSampleCount(int face, int corner) {
+		return aoSampleCounts[face * 4 + corner];
+	}
+	
+	/**
+	 * Returns the bit of a neighbour-block that can occlude the corner of the face (for ambient-occlusion) 
+	 * in the mask of {@link ExtendedBlockContext#getOccludingNeighbourMask()}.<br>
+	 * <i>(A neighbour can be sampled more than once for the same corner)</i>
+	 */
+	public int getAoSampleBit(int face, int corner, int sample) {
+		return aoSampleBits[(face * 4 + corner) * AO_SAMPLES + sample];
+	}
+	
+	/**
+	 * Compiles the geometry of the given model-resource
+	 */
+	public static CompiledBlockModel compile(BlockModelResource bmr, TextureProvider textureProvider) {
+		Quaternionf modelRotation = Quaternionf.fromAxesAnglesDeg(
+				-bmr.getXRot(),
+				-bmr.getYRot(),
+				0
+			);
+		
+		List<CompiledFace> faces = new ArrayList<>();
+		Model model = new Model();
+		
+		for (BlockModelElementResource bmer : bmr.getElements()){
+			model.merge(compileElement(bmr, bmer, modelRotation, textureProvider, faces));
+		}
+
+		model.translate(NEG_HALF_3F);
+		model.rotate(modelRotation);
+		model.translate(HALF_3F);
+		
+		return new CompiledBlockModel(bmr, faces);
+	}
+	
+	private static Model compileElement(BlockModelResource bmr, BlockModelElementResource bmer, Quaternionf modelRotation, TextureProvider textureProvider, List<CompiledFace> faces) {
+		Model model = new Model();
+		
+		//create faces
+		Vector3f min = bmer.getFrom().min(bmer.getTo());
+		Vector3f max = bmer.getFrom().max(bmer.getTo());
+		
+		Vector3f[] c = new Vector3f[]{
+			new Vector3f( min .getX(), min .getY(), min .getZ()),
+			new Vector3f( min .getX(), min .getY(), max .getZ()),
+			new Vector3f( max .getX(), min .getY(), min .getZ()),
+			new Vector3f( max .getX(), min .getY(), max .getZ()),
+			new Vector3f( min .getX(), max .getY(), min .getZ()),
+			new Vector3f( min .getX(), max .getY(), max .getZ()),
+			new Vector3f( max .getX(), max .getY(), min .getZ()),
+			new Vector3f( max .getX(), max .getY(), max .getZ()),
+		};
+		
+		compileFace(model, bmr, bmer.getDownFace(), Direction.DOWN, modelRotation, textureProvider, faces, c[0], c[2], c[3], c[1]);
+		compileFace(model, bmr, bmer.getUpFace(), Direction.UP, modelRotation, textureProvider, faces, c[5], c[7], c[6], c[4]);
+		compileFace(model, bmr, bmer.getNorthFace(), Direction.NORTH, modelRotation, textureProvider, faces, c[2], c[0], c[4], c[6]);
+		compileFace(model, bmr, bmer.getSouthFace(), Direction.SOUTH, modelRotation, textureProvider, faces, c[1], c[3], c[7], c[5]);
+		compileFace(model, bmr, bmer.getWestFace(), Direction.WEST, modelRotation, textureProvider, faces, c[0], c[1], c[5], c[4]);
+		compileFace(model, bmr, bmer.getEastFace(), Direction.EAST, modelRotation, textureProvider, faces, c[3], c[2], c[6], c[7]);
+
+		//rotate
+		if (bmer.isRotation()){
+			Vector3f translation = bmer.getRotationOrigin();
+			model.translate(translation.negate());
+			
+			model.rotate(Quaternionf.fromAngleDegAxis(
+					bmer.getRotationAngle(),
+					bmer.getRotationAxis().toVector().toFloat()
+				));
+
+			if (bmer.isRotationRescale()){
+				Vector3f scale = 
+						Vector3f.ONE
+						.sub(bmer.getRotationAxis().toVector().toFloat())
+						.mul(Math.abs(TrigMath.sin(bmer.getRotationAngle() * TrigMath.DEG_TO_RAD)))
+						.mul(1 - (TrigMath.SQRT_OF_TWO - 1))
+						.add(Vector3f.ONE);
+				model.transform(Matrix3f.createScaling(scale));
+			}
+			
+			model.translate(translation);
+			
+		}
+		
+		//scale down
+		model.transform(Matrix3f.createScaling(1f / 16f));
+		
+		return model;
+	}
+	
+	private static void compileFace(Model model, BlockModelResource m, BlockModelElementFaceResource face, Direction faceDir, Quaternionf modelRotation, TextureProvider textureProvider, List<CompiledFace> faces, Vector3f c0, Vector3f c1, Vector3f c2, Vector3f c3) {
+		if (face == null) return;
+		
+		CompiledFace compiled = new CompiledFace();
+		compiled.direction = faceDir;
+		compiled.tinted = face.isTinted();
+		
+		//face culling
+		if (face.isCullface()){
+			compiled.cullDirection = getDirection(modelRotation.rotate(face.getCullface().toVector().toFloat()).round().toInt());
+		}
+		
+		//light
+		Vector3f lightDir = modelRotation.rotate(faceDir.toVector().toFloat());
+		compiled.lightBlockOffset = lightDir.round().toInt();
+		compiled.lightViewOffset = lightDir.toInt();
+
+		//UV
+		Vector4f uv = face.getUv().toFloat().div(16);
+		
+		//UV-Lock counter-rotation
+		int uvLockAngle = 0;
+		if (m.isUvLock()){
+			Quaternionf rot = Quaternionf.fromAxesAnglesDeg(m.getXRot(), m.getYRot(), 0);
+			uvLockAngle = (int) rot.getAxesAnglesDeg().dot(faceDir.toVector().toFloat());
+			
+			//TODO: my math has stopped working, there has to be a more consistent solution
+			if (m.getXRot() >= 180 && m.getYRot() != 90 && m.getYRot() != 270) uvLockAngle += 180;
+		}
+
+		//create both triangles
+		Vector2f[] uvs = new Vector2f[4];
+		uvs[0] = new Vector2f(uv.getX(), uv.getW());
+		uvs[1] = new Vector2f(uv.getZ(), uv.getW());
+		uvs[2] = new Vector2f(uv.getZ(), uv.getY());
+		uvs[3] = new Vector2f(uv.getX(), uv.getY());
+		
+		//face texture rotation
+		uvs = rotateUVOuter(uvs, uvLockAngle);
+		uvs = rotateUVInner(uvs, face.getRotation());
+		
+		compiled.texture = face.getResolvedTexture();
+		compiled.textureId = -1;
+		if (compiled.texture != null) {
+			try {
+				compiled.textureId = textureProvider.getTextureIndex(compiled.texture);
+				compiled.opaque = textureProvider.getTexture(compiled.textureId).isOpaque();
+			} catch (NoSuchTextureException e) {
+				//the exception is thrown when the face is used
+			}
+		}
+		
+		compiled.f1 = new Face(c0, c1, c2, uvs[0], uvs[1], uvs[2], compiled.textureId);
+		compiled.f2 = new Face(c0, c2, c3, uvs[0], uvs[2], uvs[3], compiled.textureId);
+		
+		model.addFace(compiled.f1);
+		model.addFace(compiled.f2);
+		
+		//ambient occlusion
+		Vector3f[] corners = new Vector3f[]{ c0, c1, c2, c3 };
+		compiled.aoOffsets = new ArrayList<>(4);
+		for (Vector3f corner : corners) {
+			compiled.aoOffsets.add(getAoOffsets(modelRotation, corner, faceDir));
+		}
+		
+		//if is top face it contributes to the model-color
+		Vector3f dir = lightDir;
+		
+		BlockModelElementResource bmer = face.getElement();
+		if (bmer.isRotation()){
+			Quaternionf rot = Quaternionf.fromAngleDegAxis(
+					bmer.getRotationAngle(),
+					bmer.getRotationAxis().toVector().toFloat()
+				);
+			dir = rot.rotate(dir);
+		}
+		
+		compiled.mapColorFactor = dir.getY();
+		
+		faces.add(compiled);
+	}
+	
+	/**
+	 * Returns the (rotated) offsets of all neighbours that can occlude the corner of a face
+	 */
+	private static List<Vector3i> getAoOffsets(Quaternionf modelRotation, Vector3f vertex, Direction dir){
+		List<Vector3i> offsets = new ArrayList<>(AO_SAMPLES);
+		
+		int x = 0;
+		if (vertex.getX() == 16){
+			x = 1;
+		} else if (vertex.getX() == 0){
+			x = -1;
+		}
+		
+		int y = 0;
+		if (vertex.getY() == 16){
+			y = 1;
+		} else if (vertex.getY() == 0){
+			y = -1;
+		}
+		
+		int z = 0;
+		if (vertex.getZ() == 16){
+			z = 1;
+		} else if (vertex.getZ() == 0){
+			z = -1;
+		}
+		
+		Vector3i[] candidates = new Vector3i[]{
+			new Vector3i(x, y, 0),
+			new Vector3i(x, 0, z),
+			new Vector3i(0, y, z),
+			new Vector3i(x, y, z)
+		};
+		
+		for (Vector3i rel : candidates) {
+			if (rel.dot(dir.toVector()) > 0){
+				offsets.add(modelRotation.rotate(rel.toFloat()).round().toInt());
+			}
+		}
+		
+		return offsets;
+	}
+	
+	private static Direction getDirection(Vector3i vector) {
+		for (Direction direction : Direction.values()) {
+			if (direction.toVector().equals(vector)) return direction;
+		}
+		
+		return null;
+	}
+	
+	private static Vector2f[] rotateUVInner(Vector2f[] uv, int angle){
+		if (uv.length == 0) return uv;
+		
+		int steps = getRotationSteps(angle); 
+		
+		for (int i = 0; i < steps; i++){
+			Vector2f first = uv[uv.length - 1];
+			System.arraycopy(uv, 0, uv, 1, uv.length - 1);
+			uv[0] = first;
+		}
+		
+		return uv;
+	}
+	
+	private static Vector2f[] rotateUVOuter(Vector2f[] uv, float angle){
+		angle %= 360;
+		if (angle < 0) angle += 360;
+		
+		if (angle == 0) return uv;
+		
+		Complexf c = Complexf.fromAngleDeg(angle);
+		
+		for (int i = 0; i < uv.length; i++){
+			uv[i] = uv[i].sub(HALF_2F);
+			uv[i] = c.rotate(uv[i]);
+			uv[i] = uv[i].add(HALF_2F);
+		}
+		
+		return uv;
+	}
+	
+	private static int getRotationSteps(int angle){
+		angle = -Math.floorDiv(angle, 90);
+		angle %= 4;
+		if (angle < 0) angle += 4;
+		
+		return angle;
+	}
+	
+	/**
+	 * A face while it is compiled, the triangles are transformed with the model until they have their final geometry
+	 */
+	private static class CompiledFace {
+		private Face f1, f2;
+		private int textureId;
+		private String texture;
+		private boolean opaque;
+		private Direction direction;
+		private boolean tinted;
+		private float mapColorFactor;
+		private Direction cullDirection;
+		private Vector3i lightBlockOffset;
+		private Vector3i lightViewOffset;
+		private List<List<Vector3i>> aoOffsets;
+	}
+	
+}
@@ -0,0 +1,229 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.resourcepack;
+
+import com.flowpowered.math.vector.Vector3f;
+
+import de.bluecolored.bluemap.util.Direction;
+
+/**
+ * The parts of the six sides of a block that are covered by opaque faces of its model.<br>
+ * Each side is a 16x16 bitmask, one bit for each 1/16 x 1/16 square of the side.
+ * The squares are indexed by the two coordinates in the plane of the side (x/z for up and down, x/y for north and south, z/y for west and east),
+ * so two opposing sides of neighbour-blocks use the same bits for the same squares.<br>
+ * <br>
+ * A face that lies on a side of its block is hidden if the neighbour on that side covers all squares of the face with its opposing side.<br>
+ * <br>
+ * <i>A cull-shape is immutable.</i>
+ */
+public class CullShape {
+	
+	/**
+	 * The number of longs that are needed for the bitmask of one side
+	 */
+	public static final int SIDE_LENGTH = 16 * 16 / 64;
+	
+	public static final CullShape EMPTY = new CullShape(new long[Direction.values().length * SIDE_LENGTH]);
+	
+	private static final float EPSILON = 0.0001f;
+	
+	private final long[] masks; //direction * SIDE_LENGTH
+	private final boolean empty;
+	
+	private CullShape(long[] masks) {
+		this.masks = masks;
+		
+		boolean empty = true;
+		for (long mask : masks) {
+			if (mask != 0) empty = false;
+		}
+		this.empty = empty;
+	}
+	
+	/**
+	 * Returns true if this shape does not cover anything
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+	
+	/**
+	 * Returns true if the given side of this shape covers all squares that are set in the given side-mask
+	 *
+	 * @param sideMask the bitmask of one side, starting at the offset
+	 */
+	public boolean covers(Direction side, long[] sideMask, int offset) {
+		int base = side.ordinal() * SIDE_LENGTH;
+		for (int i = 0; i < SIDE_LENGTH; i++) {
+			if ((sideMask[offset + i] & ~masks[base + i]) != 0) return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns a shape that covers everything that this or the other shape covers
+	 */
+	public CullShape union(CullShape other) {
+		long[] result = new long[masks.length];
+		for (int i = 0; i < masks.length; i++) {
+			result[i] = masks[i] | other.masks[i];
+		}
+		
+		return new CullShape(result);
+	}
+	
+	/**
+	 * Returns a shape that only covers what this and the other shape both cover
+	 */
+	public CullShape intersection(CullShape other) {
+		long[] result = new long[masks.length];
+		for (int i = 0; i < masks.length; i++) {
+			result[i] = masks[i] & other.masks[i];
+		}
+		
+		return new CullShape(result);
+	}
+	
+	/**
+	 * Creates a shape from the bitmasks of all sides (direction-ordinal * {@link #SIDE_LENGTH}).<br>
+	 * The array is not copied, it should not be changed afterwards.
+	 */
+	static CullShape of(long[] masks) {
+		return new CullShape(masks);
+	}
+	
+	/**
+	 * Returns the side of the block that the quad with the given corners (in block-coordinates from 0 to 1) lies on,
+	 * or null if the quad does not lie flat on one of the sides.
+	 */
+	static Direction getSide(Vector3f c0, Vector3f c1, Vector3f c2, Vector3f c3) {
+		for (Direction side : Direction.values()) {
+			int axis = getAxis(side);
+			float plane = side.toVector().toFloat().dot(Vector3f.ONE) > 0 ? 1f : 0f;
+			
+			if (
+					Math.abs(get(c0, axis) - plane) < EPSILON &&
+					Math.abs(get(c1, axis) - plane) < EPSILON &&
+					Math.abs(get(c2, axis) - plane) < EPSILON &&
+					Math.abs(get(c3, axis) - plane) < EPSILON
+				) return side;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Sets the bits of all squares on the side that the quad touches, the quad has to lie on that side (see {@link #getSide}).
+	 */
+	static void addTouched(long[] sideMask, int offset, Direction side, Vector3f c0, Vector3f c1, Vector3f c2, Vector3f c3) {
+		int uAxis = getUAxis(side), vAxis = getVAxis(side);
+		
+		float uMin = Math.min(Math.min(get(c0, uAxis), get(c1, uAxis)), Math.min(get(c2, uAxis), get(c3, uAxis)));
+		float uMax = Math.max(Math.max(get(c0, uAxis), get(c1, uAxis)), Math.max(get(c2, uAxis), get(c3, uAxis)));
+		float vMin = Math.min(Math.min(get(c0, vAxis), get(c1, vAxis)), Math.min(get(c2, vAxis), get(c3, vAxis)));
+		float vMax = Math.max(Math.max(get(c0, vAxis), get(c1, vAxis)), Math.max(get(c2, vAxis), get(c3, vAxis)));
+		
+		setSquares(sideMask, offset,
+				(int) Math.floor(uMin * 16 + EPSILON), (int) Math.ceil(uMax * 16 - EPSILON),
+				(int) Math.floor(vMin * 16 + EPSILON), (int) Math.ceil(vMax * 16 - EPSILON)
+			);
+	}
+	
+	/**
+	 * Sets the bits of all squares on the side that the quad fully covers, the quad has to lie on that side (see {@link #getSide}).<br>
+	 * Nothing is set if the quad is not an axis-aligned rectangle.
+	 */
+	static void addCovered(long[] sideMask, int offset, Direction side, Vector3f c0, Vector3f c1, Vector3f c2, Vector3f c3) {
+		int uAxis = getUAxis(side), vAxis = getVAxis(side);
+		
+		float uMin = Math.min(Math.min(get(c0, uAxis), get(c1, uAxis)), Math.min(get(c2, uAxis), get(c3, uAxis)));
+		float uMax = Math.max(Math.max(get(c0, uAxis), get(c1, uAxis)), Math.max(get(c2, uAxis), get(c3, uAxis)));
+		float vMin = Math.min(Math.min(get(c0, vAxis), get(c1, vAxis)), Math.min(get(c2, vAxis), get(c3, vAxis)));
+		float vMax = Math.max(Math.max(get(c0, vAxis), get(c1, vAxis)), Math.max(get(c2, vAxis), get(c3, vAxis)));
+		
+		//a quad that is rotated in the plane of the side does not cover its bounding-rectangle
+		for (Vector3f c : new Vector3f[]{ c0, c1, c2, c3 }) {
+			if (!isOneOf(get(c, uAxis), uMin, uMax) || !isOneOf(get(c, vAxis), vMin, vMax)) return;
+		}
+		
+		setSquares(sideMask, offset,
+				(int) Math.ceil(uMin * 16 - EPSILON), (int) Math.floor(uMax * 16 + EPSILON),
+				(int) Math.ceil(vMin * 16 - EPSILON), (int) Math.floor(vMax * 16 + EPSILON)
+			);
+	}
+	
+	/**
+	 * Sets the bits of the squares from (u0, v0) inclusive to (u1, v1) exclusive
+	 */
+	private static void setSquares(long[] sideMask, int offset, int u0, int u1, int v0, int v1) {
+		u0 = Math.max(u0, 0);
+		v0 = Math.max(v0, 0);
+		u1 = Math.min(u1, 16);
+		v1 = Math.min(v1, 16);
+		
+		for (int v = v0; v < v1; v++) {
+			for (int u = u0; u < u1; u++) {
+				int bit = v * 16 + u;
+				sideMask[offset + (bit >> 6)] |= 1L << (bit & 63);
+			}
+		}
+	}
+	
+	private static boolean isOneOf(float value, float a, float b) {
+		return Math.abs(value - a) < EPSILON || Math.abs(value - b) < EPSILON;
+	}
+	
+	private static int getAxis(Direction side) {
+		switch (side) {
+			case UP: case DOWN: return 1;
+			case NORTH: case SOUTH: return 2;
+			default: return 0;
+		}
+	}
+	
+	private static int getUAxis(Direction side) {
+		switch (side) {
+			case WEST: case EAST: return 2;
+			default: return 0;
+		}
+	}
+	
+	private static int getVAxis(Direction side) {
+		switch (side) {
+			case UP: case DOWN: return 2;
+			default: return 1;
+		}
+	}
+	
+	private static float get(Vector3f v, int axis) {
+		switch (axis) {
+			case 0: return v.getX();
+			case 1: return v.getY();
+			default: return v.getZ();
+		}
+	}
+	
+}
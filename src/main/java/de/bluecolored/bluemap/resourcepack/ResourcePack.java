@@ -32,6 +32,7 @@
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -55,6 +56,7 @@ public class ResourcePack {
 	private TextureProvider textureProvider;
 	private BlockColorProvider blockColorProvider;
 	private Cache<BlockState, BlockStateResource> blockStateResourceCache;
+	private volatile CullShape[] cullShapes; //by palette-id, copy on write
 
 	private Logger logger;
 
@@ -72,6 +74,8 @@ public ResourcePack(List<File> dataSources, File textureExportFile, Logger logge
 				.maximumSize(10000)
 				.build();
 		
+		cullShapes = new CullShape[0];
+		
 		textureProvider = new TextureProvider();
 		if (textureExportFile.exists()){
 			textureProvider.load(textureExportFile);
@@ -154,6 +158,42 @@ public BlockStateResource getBlockStateResource(BlockState block) throws NoSuchR
 		return bsr;
 	}
 	
+	/**
+	 * Returns the cull-shape of the block-state (see {@link BlockStateResource#getCullShape()}), 
+	 * or an empty shape if the block-state has no resource or is air or a liquid.<br>
+	 * <br>
+	 * <i>The shapes are cached by the palette-id of the block-state, so this is cheap enough to be used for every neighbour of every block.</i>
+	 */
+	public CullShape getCullShape(BlockState block){
+		int paletteId = block.getPaletteId();
+		
+		CullShape[] shapes = cullShapes;
+		if (paletteId < shapes.length && shapes[paletteId] != null) return shapes[paletteId];
+		
+		return registerCullShape(block, paletteId);
+	}
+	
+	private synchronized CullShape registerCullShape(BlockState block, int paletteId){
+		CullShape[] shapes = cullShapes;
+		if (paletteId < shapes.length && shapes[paletteId] != null) return shapes[paletteId];
+		
+		CullShape shape = CullShape.EMPTY;
+		if (!block.isAir() && !block.isLiquid()) {
+			try {
+				shape = getBlockStateResource(block).getCullShape();
+			} catch (NoSuchResourceException | InvalidResourceDeclarationException e) {
+				//the block is rendered without a resource-model, so it does not cover anything
+			}
+		}
+		
+		//copy on write, so the array is published with the volatile field
+		shapes = Arrays.copyOf(shapes, Math.max(shapes.length, paletteId + 1));
+		shapes[paletteId] = shape;
+		cullShapes = shapes;
+		
+		return shape;
+	}
+	
 	public TextureProvider getTextureProvider(){
 		return textureProvider;
 	}
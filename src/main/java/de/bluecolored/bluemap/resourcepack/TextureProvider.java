@@ -26,6 +26,7 @@
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -109,10 +110,15 @@ public void load(File file) throws IOException {
 		
 		int i = 0;
 		for(ConfigurationNode n : node.getNode("textures").getChildrenList()){
+			String base64 = n.getNode("texture").getString();
+			
+			//texture-files that have been exported before the opaque-flag existed don't have it, so it is read from the image
+			ConfigurationNode opaque = n.getNode("opaque");
 			Texture t = new Texture(
 					n.getNode("id").getString(), 
-					n.getNode("texture").getString(), 
+					base64, 
 					n.getNode("transparent").getBoolean(false),
+					opaque.isVirtual() ? checkOpaque(base64) : opaque.getBoolean(),
 					ConfigUtil.readVector4f(n.getNode("color"))
 				);
 			
@@ -136,22 +142,52 @@ public void save(File file) throws IOException {
 			n.getNode("id").setValue(t.getId());
 			n.getNode("texture").setValue(t.getBase64());
 			n.getNode("transparent").setValue(t.isHalfTransparent());
+			n.getNode("opaque").setValue(t.isOpaque());
 			ConfigUtil.writeVector4f(n.getNode("color"), t.getColor());
 		}
 		
 		loader.save(node);
 	}
 	
+	private static boolean checkOpaque(BufferedImage image){
+		for (int x = 0; x < image.getWidth(); x++){
+			for (int y = 0; y < image.getHeight(); y++){
+				int pixel = image.getRGB(x, y);
+				int alpha = (pixel >> 24) & 0xff;
+				if (alpha < 0xff){
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Checks the image of a base64-encoded texture (as it is exported) for any pixels that are not fully opaque
+	 */
+	private static boolean checkOpaque(String base64){
+		try {
+			byte[] data = Base64.getDecoder().decode(base64.substring(base64.indexOf(',') + 1));
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+			return image != null && checkOpaque(image);
+		} catch (IOException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+
 	public class Texture {
 		
 		private String id;
 		private String base64;
 		private boolean halfTransparent;
+		private boolean opaque;
 		private Vector4f color;
 		
-		public Texture(String id, String base64, boolean halfTransparent, Vector4f color){
+		public Texture(String id, String base64, boolean halfTransparent, boolean opaque, Vector4f color){
 			this.id = id;
 			this.halfTransparent = halfTransparent;
+			this.opaque = opaque;
 			this.base64 = base64;
 			this.color = color;
 		}
@@ -169,6 +205,7 @@ public Texture(String id, BufferedImage image) throws IOException {
 			
 			//check halfTransparency
 			this.halfTransparent = checkHalfTransparent(image);
+			this.opaque = checkOpaque(image);
 			
 			//calculate color
 			this.color = calculateColor(image);
@@ -223,6 +260,13 @@ public boolean isHalfTransparent() {
 			return halfTransparent;
 		}
 		
+		/**
+		 * Returns true if all pixels of this texture are fully opaque, so faces with this texture hide everything behind them
+		 */
+		public boolean isOpaque() {
+			return opaque;
+		}
+		
 		public Vector4f getColor(){
 			return color;
 		}
@@ -46,6 +46,17 @@ public Vector3i toVector(){
 		return dir;
 	}
 	
+	public Direction opposite(){
+		switch (this) {
+		case UP: return DOWN;
+		case DOWN: return UP;
+		case NORTH: return SOUTH;
+		case SOUTH: return NORTH;
+		case WEST: return EAST;
+		default: return WEST;
+		}
+	}
+	
 	public static Direction fromString(String name){
 		Preconditions.checkNotNull(name);
 		
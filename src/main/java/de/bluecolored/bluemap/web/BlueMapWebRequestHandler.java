@@ -44,6 +44,7 @@
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.time.DateFormatUtils;
 
+import de.bluecolored.bluemap.metrics.MetricRegistry;
 import de.bluecolored.bluemap.webserver.HttpRequest;
 import de.bluecolored.bluemap.webserver.HttpRequestHandler;
 import de.bluecolored.bluemap.webserver.HttpResponse;
@@ -55,10 +56,21 @@ public class BlueMapWebRequestHandler implements HttpRequestHandler {
 	private static final long DEFLATE_MAX_SIZE = 10L * 1024L * 1024L;
 	private static final long INFLATE_MAX_SIZE = 10L * 1024L * 1024L;
 	
+	private static final String METRICS_PATH = "metrics";
+	
 	private Path webRoot;
+	private MetricRegistry metrics;
 	
 	public BlueMapWebRequestHandler(Path webRoot) {
+		this(webRoot, null);
+	}
+	
+	/**
+	 * @param metrics the registry whose metrics are served in the prometheus text-format on <code>/metrics</code>, or null to not serve any metrics
+	 */
+	public BlueMapWebRequestHandler(Path webRoot, MetricRegistry metrics) {
 		this.webRoot = webRoot;
+		this.metrics = metrics;
 	}
 	
 	@Override
@@ -98,6 +110,14 @@ private HttpResponse generateResponse(HttpRequest request) {
 		if (path.startsWith("/")) path = path.substring(1);
 		if (path.endsWith("/")) path = path.substring(0, path.length() - 1);
 		
+		if (metrics != null && path.equals(METRICS_PATH)) {
+			HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+			response.addHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			response.addHeader("Cache-Control", "no-cache");
+			response.setData(metrics.toPrometheusText());
+			return response;
+		}
+		
 		Path filePath = webRoot;
 		try {
 			filePath = webRoot.resolve(path);
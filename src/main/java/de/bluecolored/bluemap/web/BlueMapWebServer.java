@@ -27,6 +27,7 @@
 import java.io.IOException;
 
 import de.bluecolored.bluemap.logger.Logger;
+import de.bluecolored.bluemap.metrics.MetricRegistry;
 import de.bluecolored.bluemap.webserver.WebServer;
 
 public class BlueMapWebServer extends WebServer {
@@ -43,7 +44,7 @@ public BlueMapWebServer(WebServerConfig config, Logger logger) {
 			config.getWebserverPort(), 
 			config.getWebserverMaxConnections(), 
 			config.getWebserverBindAdress(), 
-			new BlueMapWebRequestHandler(config.getWebRoot()), 
+			new BlueMapWebRequestHandler(config.getWebRoot(), config.isWebserverMetricsEnabled() ? MetricRegistry.global() : null), 
 			logger
 		);
 		
@@ -36,5 +36,12 @@ public interface WebServerConfig {
 	int getWebserverPort();
 
 	int getWebserverMaxConnections();
+	
+	/**
+	 * Whether the render-metrics should be served in the prometheus text-format on <code>/metrics</code>
+	 */
+	default boolean isWebserverMetricsEnabled() {
+		return false;
+	}
 
 }
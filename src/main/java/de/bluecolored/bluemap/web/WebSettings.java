@@ -93,6 +93,15 @@ public void setHiresViewDistance(float hiresViewDistance, String mapId) {
 		set(hiresViewDistance, mapId, "hires", "viewDistance");
 	}
 	
+	/**
+	 * Sets the view-distance up to which the web-viewer loads the simplified level-of-detail variants of the hires-tiles.<br>
+	 * Beyond the hires view-distance and within this distance the variants are shown instead of the full hires-tiles, set this to 0 to not load them at all.<br>
+	 * The variants are only saved if {@link de.bluecolored.bluemap.render.RenderSettings#isSaveHiresLod()} is enabled.
+	 */
+	public void setHiresLodViewDistance(float hiresLodViewDistance, String mapId) {
+		set(hiresLodViewDistance, mapId, "hires", "lod", "viewDistance");
+	}
+	
 	public void setLowresViewDistance(float lowresViewDistance, String mapId) {
 		set(lowresViewDistance, mapId, "lowres", "viewDistance");
 	}
@@ -31,6 +31,20 @@ function BlueMap(element, dataRoot) {
 			{x: 0, z: 0}
 		);
 
+		//the simplified hires-tiles are loaded around the full hires-tiles, if the map has them
+		let lod = this.settings["hires"]["lod"];
+		if (lod && lod["viewDistance"] > this.settings["hires"]["viewDistance"]) {
+			this.hiresLodTileManager = new BlueMap.TileManager(
+				this,
+				lod["viewDistance"],
+				this.loadHiresLodTile,
+				this.hiresScene,
+				this.settings["hires"]["tileSize"],
+				{x: 0, z: 0},
+				this.settings["hires"]["viewDistance"]
+			);
+		}
+
 		this.loadHiresMaterial(function () {
 			this.loadLowresMaterial(function () {
 				this.start();
@@ -47,6 +61,7 @@ BlueMap.prototype.start = function () {
 
 	this.lowresTileManager.update();
 	this.hiresTileManager.update();
+	if (this.hiresLodTileManager) this.hiresLodTileManager.update();
 };
 
 BlueMap.prototype.update = function () {
@@ -57,6 +72,7 @@ BlueMap.prototype.update = function () {
 
 	this.lowresTileManager.setPosition(this.controls.targetPosition);
 	this.hiresTileManager.setPosition(this.controls.targetPosition);
+	if (this.hiresLodTileManager) this.hiresLodTileManager.setPosition(this.controls.targetPosition);
 };
 
 BlueMap.prototype.render = function () {
@@ -208,15 +224,24 @@ BlueMap.prototype.loadLowresMaterial = function (callback) {
 };
 
 BlueMap.prototype.loadHiresTile = function (tileX, tileZ, callback, onError) {
+	this.loadHiresGeometry(tileX, tileZ, ".json", this.hiresMaterial, callback, onError);
+};
+
+BlueMap.prototype.loadHiresLodTile = function (tileX, tileZ, callback, onError) {
+	//the simplified tiles only have vertex-colors, like the lowres-tiles
+	this.loadHiresGeometry(tileX, tileZ, ".lod.json", this.lowresMaterial, callback, onError);
+};
+
+BlueMap.prototype.loadHiresGeometry = function (tileX, tileZ, fileType, material, callback, onError) {
 	let scope = this;
 
 	let path = this.dataRoot + "hires/" + this.map + "/";
 	path += BlueMap.utils.pathFromCoords(tileX, tileZ);
-	path += ".json";
+	path += fileType;
 
 
 	this.bufferGeometryLoader.load(path, function (geometry) {
-		let object = new THREE.Mesh(geometry, scope.hiresMaterial);
+		let object = new THREE.Mesh(geometry, material);
 
 		let tileSize = scope.settings.hires["tileSize"];
 		let translate = scope.settings.hires["translate"];
@@ -258,9 +283,13 @@ BlueMap.prototype.loadLowresTile = function (tileX, tileZ, callback, onError) {
 
 
 // ###### TileManager ######
-BlueMap.TileManager = function (blueMap, viewDistance, tileLoader, scene, tileSize, position) {
+/**
+ * If an innerViewDistance is given, no tiles are loaded within that distance (that is where another TileManager shows its tiles)
+ */
+BlueMap.TileManager = function (blueMap, viewDistance, tileLoader, scene, tileSize, position, innerViewDistance) {
 	this.blueMap = blueMap;
 	this.viewDistance = viewDistance;
+	this.innerViewDistance = innerViewDistance || 0;
 	this.tileLoader = tileLoader;
 	this.scene = scene;
 	this.tileSize = new THREE.Vector2(tileSize.x, tileSize.z);
@@ -306,7 +335,8 @@ BlueMap.TileManager.prototype.removeFarTiles = function () {
 			tile.x + vd < this.tile.x ||
 			tile.x - vd > this.tile.x ||
 			tile.z + vd < this.tile.y ||
-			tile.z - vd > this.tile.y
+			tile.z - vd > this.tile.y ||
+			this.isInnerTile(tile.x, tile.z)
 		) {
 			tile.disposeModel();
 			delete this.tiles[keys[i]];
@@ -349,9 +379,21 @@ BlueMap.TileManager.prototype.loadNextTile = function () {
 	return false;
 };
 
+BlueMap.TileManager.prototype.isInnerTile = function (x, z) {
+	let ivd = this.innerViewDistance;
+	if (ivd <= 0) return false;
+
+	return (
+		Math.abs(x - this.tile.x) <= ivd &&
+		Math.abs(z - this.tile.y) <= ivd
+	);
+};
+
 BlueMap.TileManager.prototype.tryLoadTile = function (x, z) {
 	let scope = this;
 
+	if (this.isInnerTile(x, z)) return false;
+
 	let tileHash = BlueMap.utils.hashTile(x, z);
 
 	let tile = this.tiles[tileHash];